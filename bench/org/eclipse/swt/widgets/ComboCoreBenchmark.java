@@ -0,0 +1,283 @@
+package org.eclipse.swt.widgets;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.SWT;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the <code>ComboBoxEx</code> item operations, run against
+ * <code>ComboSimulatedBackend</code> so that it runs on any platform.
+ * <p>
+ * Operations that change the number of items undo their change in the same
+ * invocation, so the list keeps its size during an iteration; the names of
+ * those benchmarks say so. <code>computeSize</code> is represented by the
+ * item part of it, <code>ComboCore.getMaxItemWidth()</code>; the rest of
+ * <code>computeSize</code> queries Win32 metrics only.
+ * </p>
+ * <p>
+ * Run with the gc profiler for allocation rates. The <code>nativeCalls</code>
+ * and <code>operations</code> counters of <code>Calls</code> divide to the
+ * number of backend calls per operation.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComboCoreBenchmark
+{
+
+    static final int IMAGE_COUNT = 32;
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean images;
+
+    @Param({"false", "true"})
+    public boolean hScroll;
+
+    ComboSimulatedBackend backend;
+    ComboCore core;
+
+    String[] items;
+    Object[] itemImages;
+    String[] range;
+    String[] changedItems;
+    Object[] rangeImages;
+
+    int next;
+    long callsBefore;
+
+    /**
+     * Backend calls made during an iteration, reported next to the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls
+    {
+
+        public long nativeCalls;
+        public long operations;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            nativeCalls = operations = 0;
+        }
+
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        Object[] pool = new Object[IMAGE_COUNT];
+        for (int i = 0; i < IMAGE_COUNT; i++)
+        {
+            pool[i] = new Object();
+        }
+
+        items = new String[size];
+        itemImages = images ? new Object[size] : null;
+        for (int i = 0; i < size; i++)
+        {
+            items[i] = "Item " + i;
+            if (images)
+            {
+                itemImages[i] = pool[i % IMAGE_COUNT];
+            }
+        }
+
+        changedItems = (String[]) items.clone();
+        for (int i = 0; i < size; i += Math.max(1, size / 4))
+        {
+            changedItems[i] = "Changed item " + i;
+        }
+
+        int length = Math.min(10, size);
+        range = new String[length];
+        rangeImages = new Object[length];
+
+        backend = new ComboSimulatedBackend(false);
+        core = new ComboCore(backend, new ComboCore.Host()
+        {
+            public void sendEvent(int eventType)
+            {
+            }
+
+            public boolean isDisposed()
+            {
+                return false;
+            }
+
+            public void setData(int index)
+            {
+            }
+        }, hScroll ? SWT.H_SCROLL : SWT.NONE);
+
+        core.setItems(items, itemImages);
+        next = 0;
+    }
+
+    void begin()
+    {
+        callsBefore = backend.getCallCount();
+    }
+
+    void end(Calls calls)
+    {
+        calls.nativeCalls += backend.getCallCount() - callsBefore;
+        calls.operations++;
+    }
+
+    int nextIndex()
+    {
+        if (++next >= size)
+        {
+            next = 0;
+        }
+
+        return next;
+    }
+
+    @Benchmark
+    public void addThenRemove(Calls calls)
+    {
+        int index = nextIndex();
+        begin();
+        core.add("Added item", images ? itemImages[index] : null, index);
+        core.remove(index, false);
+        end(calls);
+    }
+
+    @Benchmark
+    public int indexOf(Calls calls)
+    {
+        begin();
+        int result = core.indexOf(items[nextIndex()], 0);
+        end(calls);
+        return result;
+    }
+
+    @Benchmark
+    public int indexOfMissing(Calls calls)
+    {
+        begin();
+        int result = core.indexOf("Missing item", 0);
+        end(calls);
+        return result;
+    }
+
+    @Benchmark
+    public int findPrefix(Calls calls)
+    {
+        begin();
+        int result = core.findPrefix("item " + nextIndex(), 0, true);
+        end(calls);
+        return result;
+    }
+
+    @Benchmark
+    public int indexOfContaining(Calls calls)
+    {
+        begin();
+        int result = core.indexOfContaining("em " + nextIndex(), 0, true);
+        end(calls);
+        return result;
+    }
+
+    @Benchmark
+    public String[] getItems(Calls calls)
+    {
+        begin();
+        String[] result = core.model.getItems();
+        end(calls);
+        return result;
+    }
+
+    @Benchmark
+    public String[] getItemsRange(Calls calls)
+    {
+        int length = range.length;
+        begin();
+        core.getItems(Math.max(0, size / 2 - length / 2), length, range);
+        end(calls);
+        return range;
+    }
+
+    @Benchmark
+    public void removeRangeThenRestore(Calls calls)
+    {
+        int length = range.length;
+        int start = Math.max(0, size / 2 - length / 2);
+        for (int i = 0; i < length; i++)
+        {
+            range[i] = items[start + i];
+            rangeImages[i] = images ? itemImages[start + i] : null;
+        }
+
+        begin();
+        core.remove(start, start + length - 1);
+        core.beginUpdate();
+        for (int i = 0; i < length; i++)
+        {
+            core.add(range[i], rangeImages[i], start + i);
+        }
+        core.endUpdate();
+        end(calls);
+    }
+
+    @Benchmark
+    public void setItems(Calls calls)
+    {
+        begin();
+        core.setItems(items, itemImages);
+        end(calls);
+    }
+
+    @Benchmark
+    public void updateItemsThenRestore(Calls calls)
+    {
+        begin();
+        core.updateItems(changedItems);
+        core.updateItems(items);
+        end(calls);
+    }
+
+    @Benchmark
+    public int computeSize(Calls calls)
+    {
+        begin();
+        int result = core.getMaxItemWidth();
+        end(calls);
+        return result;
+    }
+
+    @Benchmark
+    public void computeSizeAfterFontChange(Calls calls, Blackhole blackhole)
+    {
+        begin();
+        core.fontChanging();
+        backend.setFont(backend.font == 1 ? 2 : 1, backend.charWidth == 7 ? 8 : 7);
+        blackhole.consume(core.getMaxItemWidth());
+        end(calls);
+    }
+
+}
@@ -0,0 +1,211 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Native side of a <code>ComboBoxEx</code>.
+ * <p>
+ * <code>ComboCore</code> keeps the items, images, widths and batching state
+ * in Java and only talks to the native control through this interface. The
+ * Win32 implementation sends the CB_* and CBEM_* messages to the COMBOBOXEX32
+ * control, <code>ComboSimulatedBackend</code> implements the same behaviour in
+ * memory so the item logic can run and be measured without Windows.
+ * </p>
+ * <p>
+ * Every method counts as one native call in <code>getCallCount()</code>,
+ * even if the Win32 implementation needs more than one message for it.
+ * </p>
+ */
+interface ComboBackend
+{
+
+    /**
+     * Error result of the item and selection methods, equal to
+     * <code>CB_ERR</code>.
+     */
+    static final int ERROR = -1;
+
+    /**
+     * Inserts an item.
+     *
+     * @param index the index of the item, -1 to append
+     * @param string the text of the item
+     * @param image the image list index of the item, -1 for no image
+     * @return the index of the new item or <code>ERROR</code>
+     */
+    int insertItem(int index, String string, int image);
+
+    /**
+     * Inserts an item whose text and image are requested from the widget
+     * when they are needed.
+     *
+     * @param index the index of the item, -1 to append
+     * @return the index of the new item or <code>ERROR</code>
+     */
+    int insertCallbackItem(int index);
+
+    /**
+     * Deletes an item.
+     *
+     * @param index the index of the item
+     * @return the number of remaining items or <code>ERROR</code>
+     */
+    int deleteItem(int index);
+
+    /**
+     * Deletes all items.
+     */
+    void deleteAll();
+
+    /**
+     * Preallocates storage before many items are inserted.
+     *
+     * @param count the number of items
+     * @param charCount the number of characters of the items
+     */
+    void initStorage(int count, int charCount);
+
+    /**
+     * Returns the index of the selected item.
+     *
+     * @return the index or <code>ERROR</code> if no item is selected
+     */
+    int getSelection();
+
+    /**
+     * Selects an item and shows its text in the text field.
+     *
+     * @param index the index of the item, -1 to clear the selection
+     * @return the index or <code>ERROR</code> if no item is selected
+     */
+    int setSelection(int index);
+
+    /**
+     * Returns the length of the text in the text field.
+     *
+     * @return the length of the text
+     */
+    int getTextLength();
+
+    /**
+     * Returns the text in the text field.
+     *
+     * @return the text
+     */
+    String getText();
+
+    /**
+     * Sets the text in the text field.
+     *
+     * @param string the text
+     * @return <code>true</code> if the text was set
+     */
+    boolean setText(String string);
+
+    /**
+     * Returns the selection in the text field, as CB_GETEDITSEL does.
+     *
+     * @return the start of the selection in the low and its end in the high
+     *         word
+     */
+    int getEditSelection();
+
+    /**
+     * Sets the selection in the text field, as CB_SETEDITSEL does.
+     *
+     * @param selection the start of the selection in the low and its end in
+     *            the high word
+     */
+    void setEditSelection(int selection);
+
+    /**
+     * Returns the handle of the font used by the control.
+     *
+     * @return the font handle
+     */
+    int /*long*/ getFont();
+
+    /**
+     * Measures the width of a single line of text in the font of the
+     * control. Resources acquired for measuring are kept until
+     * <code>endMeasure()</code>.
+     *
+     * @param string the text
+     * @return the width in pixels
+     */
+    int measureText(String string);
+
+    /**
+     * Releases the resources acquired by <code>measureText()</code>.
+     */
+    void endMeasure();
+
+    /**
+     * Returns the height of an item in the list.
+     *
+     * @return the height or <code>ERROR</code>
+     */
+    int getItemHeight();
+
+    /**
+     * Stores an image in the image list of the control. The image list is
+     * created the first time an image is set. An index equal to the number of
+     * images set so far appends the image.
+     *
+     * @param index the image list index
+     * @param image the image
+     */
+    void setImage(int index, Object image);
+
+    /**
+     * Detaches the image list from the control and disposes it.
+     */
+    void releaseImages();
+
+    /**
+     * Sets the drop-down width and horizontal extent of the list.
+     *
+     * @param scrollWidth the width of the widest item
+     * @param count the number of items
+     */
+    void setScrollWidth(int scrollWidth, int count);
+
+    /**
+     * Stops redrawing the control if it is visible and not already stopped.
+     *
+     * @return <code>true</code> if redrawing was stopped and has to be
+     *         resumed with <code>resumeRedraw()</code>
+     */
+    boolean suspendRedraw();
+
+    /**
+     * Resumes redrawing after <code>suspendRedraw()</code>.
+     */
+    void resumeRedraw();
+
+    /**
+     * Invalidates the control.
+     */
+    void redraw();
+
+    /**
+     * Invalidates the control and its drop-down list.
+     */
+    void redrawList();
+
+    /**
+     * Returns the number of calls made to the backend.
+     *
+     * @return the number of calls
+     */
+    long getCallCount();
+
+    /**
+     * Resets the number of calls to zero.
+     */
+    void resetCallCount();
+
+    /**
+     * Releases the native resources of the backend.
+     */
+    void dispose();
+
+}
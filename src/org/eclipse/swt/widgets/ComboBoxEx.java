@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.swt.widgets;
 
+import java.util.Iterator;
+
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
 import org.eclipse.swt.events.ModifyListener;
@@ -19,22 +21,15 @@ import org.eclipse.swt.events.VerifyListener;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.internal.Callback;
-import org.eclipse.swt.internal.ImageList;
 import org.eclipse.swt.internal.win32.COMBOBOXINFO;
 import org.eclipse.swt.internal.win32.LRESULT;
-import org.eclipse.swt.internal.win32.MONITORINFO;
 import org.eclipse.swt.internal.win32.MSG;
+import org.eclipse.swt.internal.win32.NMHDR;
 import org.eclipse.swt.internal.win32.OS;
 import org.eclipse.swt.internal.win32.RECT;
 import org.eclipse.swt.internal.win32.TCHAR;
 import org.eclipse.swt.internal.win32.WINDOWPOS;
 import org.eclipse.swt.internal.win32.WNDCLASS;
-import com.sun.jna.Pointer;
-import com.sun.jna.win32.libraries.ComCtl32;
-import com.sun.jna.win32.libraries.User32;
-import com.sun.jna.win32.libraries.W32API;
-import com.sun.jna.win32.libraries.W32API.HWND;
 
 public class ComboBoxEx extends Composite
 {
@@ -44,13 +39,35 @@ public class ComboBoxEx extends Composite
     boolean ignoreCharacter;
     boolean ignoreModify;
     boolean ignoreResize;
+    boolean autoComplete, ignoreAutoComplete;
+
+    /* Filters the list on a worker thread, null unless in filter mode */
+    ComboFilter filter;
+
+    /* Appends items in chunks, null unless loading */
+    ComboLoader loader;
+    int loadBudget = 8;
+
+    /* Changes queued from other threads, created on first use */
+    ComboMutationQueue mutationQueue;
 
-    private ImageList imageList;
+    /* The items shared with other combos, null if not bound */
+    ComboSharedModel sharedModel;
+
+    /* Item logic, reaches the control through the backend */
+    ComboCore core;
+    ComboWin32Backend backend;
 
-    int scrollWidth;
     int visibleCount = 5;
 
-    int /*long*/ cbtHook;
+    /* Child handles, resolved once in createHandle() */
+    int /*long*/ editHandle, comboHandle;
+
+    /* Per-message counters, null unless enabled */
+    ComboMessageStats messageStats;
+
+    /* Scratch TCHAR of the text reads and writes, see getTextBuffer() */
+    ComboTextBuffer textBuffer;
 
     /**
      * the operating system limit for the number of characters that the text
@@ -69,7 +86,8 @@ public class ComboBoxEx extends Composite
 
     static /*final*/ int /*long*/ EditProc, ListProc;
 
-    static final int /*long*/ ComboBoxProc;
+    /* Looked up when the first combo is created */
+    static int /*long*/ ComboBoxProc;
     static final TCHAR ComboBoxExClass = new TCHAR(0, "COMBOBOXEX32", true);
 
     public static final int CBEM_SETIMAGELIST = 0x402;
@@ -77,17 +95,84 @@ public class ComboBoxEx extends Composite
     public static final int CBEM_GETCOMBOCONTROL = 0x406;
     public static final int CBEM_GETEDITCONTROL = 0x407;
     public static final int CBEM_INSERTITEM = 0x40b;
+    public static final int CBEM_INSERTITEMA = 0x401;
+
+    public static final int CB_INITSTORAGE = 0x161;
+
+    public static final int CBEN_GETDISPINFOA = -800;
+    public static final int CBEN_GETDISPINFOW = -807;
 
     public static final int CBEIF_TEXT = 0x1;
     public static final int CBEIF_IMAGE = 0x2;
     public static final int CBEIF_SELECTEDIMAGE = 0x4;
     public static final int CBEIF_INDENT = 0x10;
 
+    /* Handler codes of the child control messages */
+    static final byte CHILD_NONE = 0;
+    static final byte CHILD_CHAR = 1;
+    static final byte CHILD_IME_CHAR = 2;
+    static final byte CHILD_KEYDOWN = 3;
+    static final byte CHILD_KEYUP = 4;
+    static final byte CHILD_SYSCHAR = 5;
+    static final byte CHILD_SYSKEYDOWN = 6;
+    static final byte CHILD_SYSKEYUP = 7;
+    static final byte CHILD_CAPTURECHANGED = 8;
+    static final byte CHILD_LBUTTONDBLCLK = 9;
+    static final byte CHILD_LBUTTONDOWN = 10;
+    static final byte CHILD_LBUTTONUP = 11;
+    static final byte CHILD_MBUTTONDBLCLK = 12;
+    static final byte CHILD_MBUTTONDOWN = 13;
+    static final byte CHILD_MBUTTONUP = 14;
+    static final byte CHILD_MOUSEHOVER = 15;
+    static final byte CHILD_MOUSELEAVE = 16;
+    static final byte CHILD_MOUSEMOVE = 17;
+    static final byte CHILD_RBUTTONDBLCLK = 18;
+    static final byte CHILD_RBUTTONDOWN = 19;
+    static final byte CHILD_RBUTTONUP = 20;
+    static final byte CHILD_XBUTTONDBLCLK = 21;
+    static final byte CHILD_XBUTTONDOWN = 22;
+    static final byte CHILD_XBUTTONUP = 23;
+    static final byte CHILD_PAINT = 24;
+    static final byte CHILD_CONTEXTMENU = 25;
+    static final byte CHILD_CLIPBOARD = 26;
+
+    /* Handler codes of the child control messages, indexed by message id */
+    static final byte[] CHILD_DISPATCH = new byte[OS.WM_UNDO + 1];
+
     static
     {
-        WNDCLASS lpWndClass = new WNDCLASS();
-        OS.GetClassInfo(0, ComboBoxExClass, lpWndClass);
-        ComboBoxProc = lpWndClass.lpfnWndProc;
+        CHILD_DISPATCH[OS.WM_CHAR] = CHILD_CHAR;
+        CHILD_DISPATCH[OS.WM_IME_CHAR] = CHILD_IME_CHAR;
+        CHILD_DISPATCH[OS.WM_KEYDOWN] = CHILD_KEYDOWN;
+        CHILD_DISPATCH[OS.WM_KEYUP] = CHILD_KEYUP;
+        CHILD_DISPATCH[OS.WM_SYSCHAR] = CHILD_SYSCHAR;
+        CHILD_DISPATCH[OS.WM_SYSKEYDOWN] = CHILD_SYSKEYDOWN;
+        CHILD_DISPATCH[OS.WM_SYSKEYUP] = CHILD_SYSKEYUP;
+        CHILD_DISPATCH[OS.WM_CAPTURECHANGED] = CHILD_CAPTURECHANGED;
+        CHILD_DISPATCH[OS.WM_LBUTTONDBLCLK] = CHILD_LBUTTONDBLCLK;
+        CHILD_DISPATCH[OS.WM_LBUTTONDOWN] = CHILD_LBUTTONDOWN;
+        CHILD_DISPATCH[OS.WM_LBUTTONUP] = CHILD_LBUTTONUP;
+        CHILD_DISPATCH[OS.WM_MBUTTONDBLCLK] = CHILD_MBUTTONDBLCLK;
+        CHILD_DISPATCH[OS.WM_MBUTTONDOWN] = CHILD_MBUTTONDOWN;
+        CHILD_DISPATCH[OS.WM_MBUTTONUP] = CHILD_MBUTTONUP;
+        CHILD_DISPATCH[OS.WM_MOUSEHOVER] = CHILD_MOUSEHOVER;
+        CHILD_DISPATCH[OS.WM_MOUSELEAVE] = CHILD_MOUSELEAVE;
+        CHILD_DISPATCH[OS.WM_MOUSEMOVE] = CHILD_MOUSEMOVE;
+        // CHILD_DISPATCH[OS.WM_MOUSEWHEEL] is not handled
+        CHILD_DISPATCH[OS.WM_RBUTTONDBLCLK] = CHILD_RBUTTONDBLCLK;
+        CHILD_DISPATCH[OS.WM_RBUTTONDOWN] = CHILD_RBUTTONDOWN;
+        CHILD_DISPATCH[OS.WM_RBUTTONUP] = CHILD_RBUTTONUP;
+        CHILD_DISPATCH[OS.WM_XBUTTONDBLCLK] = CHILD_XBUTTONDBLCLK;
+        CHILD_DISPATCH[OS.WM_XBUTTONDOWN] = CHILD_XBUTTONDOWN;
+        CHILD_DISPATCH[OS.WM_XBUTTONUP] = CHILD_XBUTTONUP;
+        CHILD_DISPATCH[OS.WM_PAINT] = CHILD_PAINT;
+        CHILD_DISPATCH[OS.WM_CONTEXTMENU] = CHILD_CONTEXTMENU;
+        CHILD_DISPATCH[OS.WM_CLEAR] = CHILD_CLIPBOARD;
+        CHILD_DISPATCH[OS.WM_CUT] = CHILD_CLIPBOARD;
+        CHILD_DISPATCH[OS.WM_PASTE] = CHILD_CLIPBOARD;
+        CHILD_DISPATCH[OS.WM_UNDO] = CHILD_CLIPBOARD;
+        CHILD_DISPATCH[OS.EM_UNDO] = CHILD_CLIPBOARD;
+        CHILD_DISPATCH[OS.WM_SETTEXT] = CHILD_CLIPBOARD;
     }
 
     /**
@@ -119,6 +204,25 @@ public class ComboBoxEx extends Composite
         {
             this.style |= ~SWT.H_SCROLL;
         }
+
+        backend = new ComboWin32Backend(this);
+        core = new ComboCore(backend, new ComboCore.Host()
+        {
+            public void sendEvent(int eventType)
+            {
+                ComboBoxEx.this.sendEvent(eventType);
+            }
+
+            public boolean isDisposed()
+            {
+                return ComboBoxEx.this.isDisposed();
+            }
+
+            public void setData(int index)
+            {
+                ComboBoxEx.this.setData(index);
+            }
+        }, this.style);
     }
 
     /**
@@ -147,63 +251,33 @@ public class ComboBoxEx extends Composite
     void add(String string, Image image, int index)
     {
         checkWidget();
-
-        if (string == null)
-        {
-            error(SWT.ERROR_NULL_ARGUMENT);
-        }
-
-        int count = (int) OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-
-        if (!(index <= count))
-        {
-            error(SWT.ERROR_INVALID_RANGE);
-        }
-
-        int imageIndex = addImage(image);
-
-        /*
-         * Following parts of the code uses JNA (Java Native Access)
-         * to access native win32 code, reason is that COMBOBOXEXITEM
-         * is not available in SWT and SendMessage with COMBOBOXEXITEM
-         * as a LPARAM is not available in JNI dll.
-         * 
-         * Introducing another SendMessage method and COMBOBOXEXITEM
-         * structure into SWT will reduce the dependency on JNA.
-         */
-
-        ComCtl32.COMBOBOXEXITEM item = new ComCtl32.COMBOBOXEXITEM();
-        item.mask = CBEIF_TEXT | CBEIF_IMAGE | CBEIF_INDENT | CBEIF_SELECTEDIMAGE;
-        item.pszText = string;
-        item.iItem = index;
-        item.iImage = imageIndex;
-        item.iSelectedImage = imageIndex;
-        item.cchTextMax = string.length();
-
-        HWND hwnd = new HWND();
-        hwnd.setPointer(Pointer.createConstant(handle));
-
-        User32.INSTANCE.SendMessage(hwnd, CBEM_INSERTITEM, new W32API.WPARAM(), item);
+        core.add(string, image, index);
     }
 
     /**
-     * Adds image to ComboBoxEx ImageList.
+     * Starts a batch of changes to the receiver. Until the matching call to
+     * <code>endUpdate()</code> the receiver is not redrawn, Modify and
+     * Selection events are held, new images are not pushed to the image list
+     * and the drop-down width is not recomputed. The outermost
+     * <code>endUpdate()</code> applies all of them once.
+     * <p>
+     * Calls can be nested; every call must be matched by a call to
+     * <code>endUpdate()</code>.
+     * </p>
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
      * 
-     * @param image Image
-     * @return index in ImageList
+     * @see #endUpdate()
      */
-    int addImage(Image image)
+    public void beginUpdate()
     {
-        if (imageList == null)
-        {
-            imageList = new ImageList (style & SWT.RIGHT_TO_LEFT);
-        }
-
-        int returnValue = imageList.add(image);
-
-        OS.SendMessage(handle, CBEM_SETIMAGELIST, 0, imageList.getHandle());
-
-        return returnValue;
+        checkWidget();
+        core.beginUpdate();
     }
 
     /**
@@ -320,34 +394,127 @@ public class ComboBoxEx extends Composite
     }
 
     /**
-     * The system calls this function before activating, creating, destroying,
-     * minimizing, maximizing, moving, or sizing a window; before completing a
-     * system command; before removing a mouse or keyboard event from the system
-     * message queue; before setting the keyboard focus; or before synchronizing
-     * with the system message queue. A computer-based training (CBT)
-     * application uses this hook procedure to receive useful notifications from
-     * the system.
-     * 
-     * @param nCode Message code
-     * @param wParam WPARAM
-     * @param lParam LPARAM
+     * Returns the window procedure of the COMBOBOXEX32 class, looking it up
+     * the first time.
      */
-    int /*long*/ CBTProc(int /*long*/ nCode, int /*long*/ wParam, int /*long*/ lParam)
+    static int /*long*/ getComboBoxProc()
     {
-        if ((int)/*64*/ nCode == OS.HCBT_CREATEWND)
+        if (ComboBoxProc == 0)
         {
-            TCHAR buffer = new TCHAR(0, 128);
-            OS.GetClassName(wParam, buffer, buffer.length());
-            String className = buffer.toString(0, buffer.strlen());
+            WNDCLASS lpWndClass = new WNDCLASS();
+            OS.GetClassInfo(0, ComboBoxExClass, lpWndClass);
+            ComboBoxProc = lpWndClass.lpfnWndProc;
+        }
+        return ComboBoxProc;
+    }
+
+    /**
+     * Starts creating a number of combos on the given display. Until the
+     * matching call to <code>endCreate()</code>, the hook that every combo
+     * needs while its native control is created is installed once and
+     * shared, instead of being installed and removed for each combo. Calls
+     * may be nested.
+     * 
+     * @param display the display
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the display is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_DEVICE_DISPOSED - if the display has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread of the display</li>
+     *                </ul>
+     * 
+     * @see #endCreate(Display)
+     */
+    public static void beginCreate(Display display)
+    {
+        checkCreate(display);
+        if (!OS.IsWinCE)
+            ComboCBTHook.acquire(display);
+    }
+
+    /**
+     * Ends creating combos started with <code>beginCreate()</code>. The
+     * outermost call removes the shared hook.
+     * 
+     * @param display the display
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the display is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_DEVICE_DISPOSED - if the display has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread of the display</li>
+     *                </ul>
+     * 
+     * @see #beginCreate(Display)
+     */
+    public static void endCreate(Display display)
+    {
+        checkCreate(display);
+        ComboCBTHook cbtHook = (ComboCBTHook) display.getData(ComboCBTHook.KEY);
+        if (cbtHook != null)
+            cbtHook.release();
+    }
 
-            if (className.equals("Edit") || className.equals("EDIT"))
+    /**
+     * Creates the given number of combos with the same parent and style,
+     * sharing one hook installation between them.
+     * 
+     * @param parent a composite control which will be the parent of the new
+     *            instances (cannot be null)
+     * @param style the style of control to construct
+     * @param count the number of combos
+     * @return the new combos
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the parent is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the count is negative</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the parent</li>
+     *                </ul>
+     * 
+     * @see #ComboBoxEx(Composite, int)
+     * @see #beginCreate(Display)
+     */
+    public static ComboBoxEx[] create(Composite parent, int style, int count)
+    {
+        if (parent == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (count < 0)
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        Display display = parent.getDisplay();
+        ComboBoxEx[] combos = new ComboBoxEx[count];
+        beginCreate(display);
+        try
+        {
+            for (int i = 0; i < count; i++)
             {
-                int bits = OS.GetWindowLong(wParam, OS.GWL_STYLE);
-                OS.SetWindowLong(wParam, OS.GWL_STYLE, bits & ~OS.ES_NOHIDESEL);
+                combos[i] = new ComboBoxEx(parent, style);
             }
         }
+        finally
+        {
+            endCreate(display);
+        }
+        return combos;
+    }
 
-        return OS.CallNextHookEx(cbtHook, (int)/*64*/ nCode, wParam, lParam);
+    static void checkCreate(Display display)
+    {
+        if (display == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (display.isDisposed())
+            SWT.error(SWT.ERROR_DEVICE_DISPOSED);
+        if (display.getThread() != Thread.currentThread())
+            SWT.error(SWT.ERROR_THREAD_INVALID_ACCESS);
     }
 
     /**
@@ -430,6 +597,44 @@ public class ComboBoxEx extends Composite
         OS.SendMessage(handle, OS.CB_SETEDITSEL, 0, -1);
     }
 
+    /**
+     * Clears the item at the given zero-relative index in the receiver. The
+     * text and image of the item are requested again with
+     * <code>SWT.SetData</code> the next time they are needed.
+     * <p>
+     * This operation has no effect if the receiver was not created with the
+     * <code>SWT.VIRTUAL</code> style.
+     * </p>
+     * 
+     * @param index the index of the item to clear
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of elements in the list minus 1 (inclusive)
+     *                </li>
+     *                </ul>
+     */
+    public void clear(int index)
+    {
+        checkWidget();
+        core.clear(index);
+    }
+
+    /**
+     * Clears all the items in the receiver. The text and image of an item are
+     * requested again with <code>SWT.SetData</code> the next time they are
+     * needed.
+     * <p>
+     * This operation has no effect if the receiver was not created with the
+     * <code>SWT.VIRTUAL</code> style.
+     * </p>
+     */
+    public void clearAll()
+    {
+        checkWidget();
+        core.clearAll();
+    }
+
     /**
      * Returns the preferred size of the receiver.
      * <p>
@@ -473,8 +678,6 @@ public class ComboBoxEx extends Composite
                 oldFont = OS.SelectObject(hDC, newFont);
             }
 
-            int count = (int)/*64*/ OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-
             int flags = OS.DT_CALCRECT | OS.DT_NOPREFIX;
             if ((style & SWT.READ_ONLY) == 0)
             {
@@ -485,37 +688,17 @@ public class ComboBoxEx extends Composite
             int cp = getCodePage();
 
             RECT rect = new RECT();
-            TCHAR buffer = new TCHAR(cp, length + 1);
+            ComboTextBuffer textBuffer = getTextBuffer();
+            TCHAR buffer = textBuffer.acquire(cp, length + 1);
             OS.GetWindowText(handle, buffer, length + 1);
             OS.DrawText(hDC, buffer, length, rect, flags);
+            textBuffer.release(buffer);
 
             width = Math.max(width, rect.right - rect.left);
 
             if ((style & SWT.H_SCROLL) != 0)
             {
-                width = Math.max(width, scrollWidth);
-            }
-            else
-            {
-                for (int i = 0; i < count; i++)
-                {
-                    length = (int)/*64*/ OS.SendMessage(handle, OS.CB_GETLBTEXTLEN, i, 0);
-                    if (length != OS.CB_ERR)
-                    {
-                        if (length + 1 > buffer.length())
-                        {
-                            buffer = new TCHAR(cp, length + 1);
-                        }
-
-                        int result = OS.SendMessage(handle, OS.CB_GETLBTEXT, i, buffer);
-
-                        if (result != OS.CB_ERR)
-                        {
-                            OS.DrawText(hDC, buffer, length, rect, flags);
-                            width = Math.max(width, rect.right - rect.left);
-                        }
-                    }
-                }
+                width = Math.max(width, core.scrollWidth);
             }
 
             if (newFont != 0)
@@ -524,13 +707,18 @@ public class ComboBoxEx extends Composite
             }
 
             OS.ReleaseDC(handle, hDC);
+
+            if ((style & SWT.H_SCROLL) == 0)
+            {
+                width = Math.max(width, core.getMaxItemWidth());
+            }
         }
 
         if (hHint == SWT.DEFAULT)
         {
             if ((style & SWT.SIMPLE) != 0)
             {
-                int count = (int)/*64*/ OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
+                int count = core.model.getCount();
                 int itemHeight = (int)/*64*/ OS.SendMessage(handle, OS.CB_GETITEMHEIGHT, 0, 0);
 
                 height = count * itemHeight;
@@ -589,9 +777,10 @@ public class ComboBoxEx extends Composite
 
             width += OS.GetSystemMetrics(OS.SM_CXVSCROLL) + border * 2;
 
-            if (imageList != null)
+            int imageWidth = backend.getImageWidth();
+            if (imageWidth != 0)
             {
-                width += imageList.getImageSize().x + 6;
+                width += imageWidth + 6;
             }
 
             if ((style & SWT.DROP_DOWN) != 0)
@@ -643,15 +832,9 @@ public class ComboBoxEx extends Composite
         }
         else
         {
-            int threadId = OS.GetCurrentThreadId();
-
-            Callback cbtCallback = new Callback(this, "CBTProc", 3);
-            int /*long*/ cbtProc = cbtCallback.getAddress();
-            if (cbtProc == 0)
-            {
-                error(SWT.ERROR_NO_MORE_CALLBACKS);
-            }
-            cbtHook = OS.SetWindowsHookEx(OS.WH_CBT, cbtProc, 0, threadId);
+            getComboBoxProc();
+            ComboCBTHook cbtHook = ComboCBTHook.acquire(display);
+            cbtHook.creating++;
 
             /*
              * This part of the code had to be placed here, the reason is that
@@ -663,6 +846,9 @@ public class ComboBoxEx extends Composite
             handle = OS.CreateWindowEx(widgetExtStyle(), windowClass(), null, widgetStyle(), 0, 
                     0, 0, 500, hwndParent, 0, OS.GetModuleHandle(null), widgetCreateStruct());
 
+            cbtHook.creating--;
+            cbtHook.release();
+
             if (handle == 0)
             {
                 error(SWT.ERROR_NO_HANDLES);
@@ -693,18 +879,12 @@ public class ComboBoxEx extends Composite
                 int exbits = OS.GetWindowLong(handle, OS.GWL_EXSTYLE) | OS.WS_EX_TRANSPARENT;
                 OS.SetWindowLong(handle, OS.GWL_EXSTYLE, exbits);
             }
-
-            if (cbtHook != 0)
-            {
-                OS.UnhookWindowsHookEx(cbtHook);
-            }
-
-            cbtHook = 0;
-            cbtCallback.dispose();
         }
 
         state &= ~(CANVAS | THEME_BACKGROUND);
 
+        resolveChildHandles();
+
         int /*long*/ hwndText = getEditControl();
         if (hwndText != 0 && EditProc == 0)
         {
@@ -775,6 +955,8 @@ public class ComboBoxEx extends Composite
         {
             display.removeControl(hwndList);
         }
+
+        editHandle = comboHandle = 0;
     }
 
     /**
@@ -787,15 +969,7 @@ public class ComboBoxEx extends Composite
     public void deselect(int index)
     {
         checkWidget();
-
-        int selection = (int)/*64*/ OS.SendMessage(handle, OS.CB_GETCURSEL, 0, 0);
-        if (index != selection)
-        {
-            return;
-        }
-
-        OS.SendMessage(handle, OS.CB_SETCURSEL, -1, 0);
-        sendEvent(SWT.Modify);
+        core.deselect(index);
     }
 
     /**
@@ -807,9 +981,29 @@ public class ComboBoxEx extends Composite
     public void deselectAll()
     {
         checkWidget();
+        core.deselectAll();
+    }
 
-        OS.SendMessage(handle, OS.CB_SETCURSEL, -1, 0);
-        sendEvent(SWT.Modify);
+    /**
+     * Ends a batch of changes started with <code>beginUpdate()</code>. The
+     * outermost call pushes the new images, recomputes the drop-down width,
+     * redraws the receiver and sends at most one Modify and one Selection
+     * event. Calls without a matching <code>beginUpdate()</code> are
+     * ignored.
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #beginUpdate()
+     */
+    public void endUpdate()
+    {
+        checkWidget();
+        core.endUpdate();
     }
 
     /**
@@ -853,7 +1047,7 @@ public class ComboBoxEx extends Composite
      */
     private int getComboControl()
     {
-        return OS.SendMessage(handle, CBEM_GETCOMBOCONTROL, 0, 0);
+        return comboHandle;
     }
 
     /**
@@ -863,7 +1057,18 @@ public class ComboBoxEx extends Composite
      */
     private int getEditControl()
     {
-        return OS.SendMessage(handle, CBEM_GETEDITCONTROL, 0, 0);
+        return editHandle;
+    }
+
+    /**
+     * Asks the control for its child handles and keeps them, so that the
+     * message hot path does not send CBEM_GETEDITCONTROL and
+     * CBEM_GETCOMBOCONTROL for every message.
+     */
+    void resolveChildHandles()
+    {
+        editHandle = OS.SendMessage(handle, CBEM_GETEDITCONTROL, 0, 0);
+        comboHandle = OS.SendMessage(handle, CBEM_GETCOMBOCONTROL, 0, 0);
     }
 
     /**
@@ -891,70 +1096,84 @@ public class ComboBoxEx extends Composite
     public String getItem(int index)
     {
         checkWidget();
-        int length = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXTLEN, index, 0);
-        if (length != OS.CB_ERR)
-        {
-            TCHAR buffer = new TCHAR(getCodePage(), length + 1);
-            int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXT, index, buffer);
-            if (result != OS.CB_ERR)
-                return buffer.toString(0, length);
-        }
-        int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-        if (0 <= index && index < count)
-            error(SWT.ERROR_CANNOT_GET_ITEM);
-        error(SWT.ERROR_INVALID_RANGE);
-        return "";
+        return core.getItem(index);
     }
 
     /**
-     * Returns the number of items contained in the receiver's list.
+     * Appends the item at the given, zero-relative index in the receiver's
+     * list to the builder. Throws an exception if the index is out of range.
      * 
-     * @return the number of items
+     * @param index the index of the item to append
+     * @param builder the builder to append the item to
+     * @return the number of characters appended
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the builder is null</li>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of elements in the list minus 1 (inclusive)
+     *                </li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #getItemLength(int)
      */
-    public int getItemCount()
+    public int getItem(int index, StringBuilder builder)
     {
         checkWidget();
-
-        int count = OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-        if (count == OS.CB_ERR)
-        {
-            error(SWT.ERROR_CANNOT_GET_COUNT);
-        }
-
-        return count;
+        if (builder == null)
+            error(SWT.ERROR_NULL_ARGUMENT);
+        String string = core.getItem(index);
+        builder.append(string);
+        return string.length();
     }
 
     /**
-     * Returns the height of the area which would be used to display
-     * <em>one</em> of the items in the receiver's list.
+     * Returns the number of characters of the item at the given, zero-relative
+     * index in the receiver's list. Throws an exception if the index is out of
+     * range.
      * 
-     * @return the height of one item
+     * @param index the index of the item
+     * @return the number of characters of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of elements in the list minus 1 (inclusive)
+     *                </li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
      */
-    public int getItemHeight()
+    public int getItemLength(int index)
     {
         checkWidget();
-
-        int result = OS.SendMessage(handle, OS.CB_GETITEMHEIGHT, 0, 0);
-        if (result == OS.CB_ERR)
-        {
-            error(SWT.ERROR_CANNOT_GET_ITEM_HEIGHT);
-        }
-
-        return result;
+        return core.getItemLength(index);
     }
 
     /**
-     * TODO CLEAN/COMMENT
+     * Returns the number of items contained in the receiver's list.
+     * 
+     * @return the number of items
      */
+    public int getItemCount()
+    {
+        checkWidget();
+        return core.model.getCount();
+    }
+
     /**
-     * Returns a (possibly empty) array of <code>String</code>s which are the
-     * items in the receiver's list.
-     * <p>
-     * Note: This is not the actual structure used by the receiver to maintain
-     * its list of items, so modifying the array will not affect the receiver.
-     * </p>
+     * Returns the number of item width lookups that were answered from the
+     * width cache since the widget was created or the counters were reset.
      * 
-     * @return the items in the receiver's list
+     * @return the number of cache hits
      * 
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
@@ -962,29 +1181,289 @@ public class ComboBoxEx extends Composite
      *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
      *                thread that created the receiver</li>
      *                </ul>
+     * 
+     * @see #resetWidthCacheCounters()
      */
-    public String[] getItems()
+    public long getWidthCacheHits()
     {
         checkWidget();
-        int count = getItemCount();
-        String[] result = new String[count];
-        for (int i = 0; i < count; i++)
-            result[i] = getItem(i);
-        return result;
+        return core.widthCache.getHits();
     }
 
     /**
-     * Returns <code>true</code> if the receiver's list is visible, and
-     * <code>false</code> otherwise.
-     * <p>
-     * If one of the receiver's ancestors is not visible or some other condition
-     * makes the receiver not visible, this method may still indicate that it is
-     * considered visible even though it may not actually be showing.
-     * </p>
+     * Returns the number of item width lookups that had to measure the text
+     * since the widget was created or the counters were reset.
      * 
-     * @return the receiver's list's visibility state
-     */
-    public boolean getListVisible()
+     * @return the number of cache misses
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #resetWidthCacheCounters()
+     */
+    public long getWidthCacheMisses()
+    {
+        checkWidget();
+        return core.widthCache.getMisses();
+    }
+
+    /**
+     * Resets the width cache hit and miss counters to zero.
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void resetWidthCacheCounters()
+    {
+        checkWidget();
+        core.widthCache.resetCounters();
+    }
+
+    /**
+     * Enables or disables counting and timing of the messages handled by the
+     * window procedure of the receiver and its child controls. Enabling the
+     * statistics starts with all counters at zero, disabling them discards
+     * the counters.
+     * 
+     * @param enabled <code>true</code> to collect message statistics
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #getMessageCount(int)
+     * @see #getMessageTime(int)
+     */
+    public void setMessageStatisticsEnabled(boolean enabled)
+    {
+        checkWidget();
+        if (enabled == (messageStats != null))
+            return;
+        messageStats = enabled ? new ComboMessageStats() : null;
+    }
+
+    /**
+     * Returns whether message statistics are collected.
+     * 
+     * @return <code>true</code> if message statistics are collected
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public boolean getMessageStatisticsEnabled()
+    {
+        checkWidget();
+        return messageStats != null;
+    }
+
+    /**
+     * Returns the ids of the messages that were handled at least once since
+     * the statistics were enabled or reset, in ascending order. Messages with
+     * ids of <code>0x7FF</code> and above are counted together under
+     * <code>0x7FF</code>.
+     * 
+     * @return the message ids, empty if statistics are not enabled
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int[] getMessageStatisticsMessages()
+    {
+        checkWidget();
+        return messageStats != null ? messageStats.getMessages() : new int[0];
+    }
+
+    /**
+     * Returns the number of messages with the given id that were handled
+     * since the statistics were enabled or reset.
+     * 
+     * @param msg the message id
+     * @return the number of messages, 0 if statistics are not enabled
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public long getMessageCount(int msg)
+    {
+        checkWidget();
+        return messageStats != null ? messageStats.getCount(msg) : 0;
+    }
+
+    /**
+     * Returns the cumulative time in nanoseconds spent handling messages with
+     * the given id since the statistics were enabled or reset. The time of a
+     * message includes the messages sent while it was handled.
+     * 
+     * @param msg the message id
+     * @return the time in nanoseconds, 0 if statistics are not enabled
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public long getMessageTime(int msg)
+    {
+        checkWidget();
+        return messageStats != null ? messageStats.getNanos(msg) : 0;
+    }
+
+    /**
+     * Resets the message counters and timers to zero.
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void resetMessageStatistics()
+    {
+        checkWidget();
+        if (messageStats != null)
+            messageStats.reset();
+    }
+
+    /**
+     * Returns the height of the area which would be used to display
+     * <em>one</em> of the items in the receiver's list.
+     * 
+     * @return the height of one item
+     */
+    public int getItemHeight()
+    {
+        checkWidget();
+
+        int result = OS.SendMessage(handle, OS.CB_GETITEMHEIGHT, 0, 0);
+        if (result == OS.CB_ERR)
+        {
+            error(SWT.ERROR_CANNOT_GET_ITEM_HEIGHT);
+        }
+
+        return result;
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Returns a (possibly empty) array of <code>String</code>s which are the
+     * items in the receiver's list.
+     * <p>
+     * Note: This is not the actual structure used by the receiver to maintain
+     * its list of items, so modifying the array will not affect the receiver.
+     * </p>
+     * 
+     * @return the items in the receiver's list
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public String[] getItems()
+    {
+        checkWidget();
+        return core.model.getItems();
+    }
+
+    /**
+     * Copies a range of the items in the receiver's list into the array,
+     * starting at index 0 of the array. Only the requested items are read, so
+     * paging through a long list does not copy all of it.
+     * 
+     * @param start the zero-relative index of the first item
+     * @param count the number of items to copy
+     * @param dest the array to copy the items into
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the array is null</li>
+     *                <li>ERROR_INVALID_RANGE - if the range is not within the
+     *                list</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the array is shorter than
+     *                <code>count</code></li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void getItems(int start, int count, String[] dest)
+    {
+        checkWidget();
+        core.getItems(start, count, dest);
+    }
+
+    /**
+     * Passes a range of the items in the receiver's list to the visitor, in
+     * order, without building an array. Visiting stops when the visitor
+     * returns <code>false</code>.
+     * 
+     * @param start the zero-relative index of the first item
+     * @param count the number of items to visit
+     * @param visitor the visitor
+     * @return the number of items visited
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the visitor is null</li>
+     *                <li>ERROR_INVALID_RANGE - if the range is not within the
+     *                list</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int visitItems(int start, int count, ComboItemVisitor visitor)
+    {
+        checkWidget();
+        return core.visitItems(start, count, visitor);
+    }
+
+    /**
+     * Returns <code>true</code> if the receiver's list is visible, and
+     * <code>false</code> otherwise.
+     * <p>
+     * If one of the receiver's ancestors is not visible or some other condition
+     * makes the receiver not visible, this method may still indicate that it is
+     * considered visible even though it may not actually be showing.
+     * </p>
+     * 
+     * @return the receiver's list's visibility state
+     */
+    public boolean getListVisible()
     {
         checkWidget();
 
@@ -1097,13 +1576,765 @@ public class ComboBoxEx extends Composite
     }
 
     /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Returns a string containing a copy of the contents of the receiver's text
-     * field, or an empty string if there are no contents.
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Returns a string containing a copy of the contents of the receiver's text
+     * field, or an empty string if there are no contents.
+     * 
+     * @return the receiver's text
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public String getText()
+    {
+        checkWidget();
+        int length = OS.GetWindowTextLength(handle);
+        if (length == 0)
+            return "";
+        ComboTextBuffer textBuffer = getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(getCodePage(), length + 1);
+        OS.GetWindowText(handle, buffer, length + 1);
+        String string = buffer.toString(0, length);
+        textBuffer.release(buffer);
+        return string;
+    }
+
+    /**
+     * Copies the contents of the receiver's text field into the array,
+     * truncating them to the length of the array. The array is not
+     * terminated.
+     * 
+     * @param buffer the array to copy the text into
+     * @return the number of characters of the text, which is larger than the
+     *         length of the array if the text was truncated
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the array is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #getTextLength()
+     */
+    public int getText(char[] buffer)
+    {
+        checkWidget();
+        if (buffer == null)
+            error(SWT.ERROR_NULL_ARGUMENT);
+        return copyText(buffer, null);
+    }
+
+    /**
+     * Appends the contents of the receiver's text field to the builder.
+     * 
+     * @param builder the builder to append the text to
+     * @return the number of characters appended
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the builder is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int getText(StringBuilder builder)
+    {
+        checkWidget();
+        if (builder == null)
+            error(SWT.ERROR_NULL_ARGUMENT);
+        return copyText(null, builder);
+    }
+
+    /**
+     * Returns the number of characters in the receiver's text field without
+     * copying the text.
+     * 
+     * @return the number of characters
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int getTextLength()
+    {
+        checkWidget();
+        /* The length of a multi-byte text is a number of bytes */
+        if (!OS.IsUnicode)
+            return getText().length();
+        return OS.GetWindowTextLength(handle);
+    }
+
+    /**
+     * Reads the text into the scratch buffer and copies it into the array or
+     * appends it to the builder. Only the multi-byte path allocates.
+     */
+    int copyText(char[] chars, StringBuilder builder)
+    {
+        int length = OS.GetWindowTextLength(handle);
+        if (length == 0)
+            return 0;
+        ComboTextBuffer textBuffer = getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(getCodePage(), length + 1);
+        length = OS.GetWindowText(handle, buffer, length + 1);
+        if (OS.IsUnicode)
+        {
+            if (chars != null)
+                System.arraycopy(buffer.chars, 0, chars, 0, Math.min(length, chars.length));
+            else
+                builder.append(buffer.chars, 0, length);
+        }
+        else
+        {
+            String string = buffer.toString(0, length);
+            length = string.length();
+            if (chars != null)
+                string.getChars(0, Math.min(length, chars.length), chars, 0);
+            else
+                builder.append(string);
+        }
+        textBuffer.release(buffer);
+        return length;
+    }
+
+    /**
+     * Returns the scratch buffer of the text reads and writes, creating it on
+     * first use.
+     * 
+     * @return the buffer
+     */
+    ComboTextBuffer getTextBuffer()
+    {
+        if (textBuffer == null)
+        {
+            textBuffer = new ComboTextBuffer();
+        }
+
+        return textBuffer;
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Returns the height of the receivers's text field.
+     * 
+     * @return the text height
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int getTextHeight()
+    {
+        checkWidget();
+        COMBOBOXINFO pcbi = new COMBOBOXINFO();
+        pcbi.cbSize = COMBOBOXINFO.sizeof;
+        if (((style & SWT.SIMPLE) == 0) && !OS.IsWinCE && OS.GetComboBoxInfo(handle, pcbi))
+        {
+            return (pcbi.buttonBottom - pcbi.buttonTop) + pcbi.buttonTop * 2;
+        }
+        int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETITEMHEIGHT, -1, 0);
+        if (result == OS.CB_ERR)
+            error(SWT.ERROR_CANNOT_GET_ITEM_HEIGHT);
+        return (style & SWT.DROP_DOWN) != 0 ? result + 6 : result + 10;
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Returns the maximum number of characters that the receiver's text field
+     * is capable of holding. If this has not been changed by
+     * <code>setTextLimit()</code>, it will be the constant
+     * <code>Combo.LIMIT</code>.
+     * 
+     * @return the text limit
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #LIMIT
+     */
+    public int getTextLimit()
+    {
+        checkWidget();
+        int /* long */hwndText = getEditControl();
+        if (hwndText == 0)
+            return LIMIT;
+        return (int) /* 64 */OS.SendMessage(hwndText, OS.EM_GETLIMITTEXT, 0, 0) & 0x7FFFFFFF;
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Gets the number of items that are visible in the drop down portion of the
+     * receiver's list.
+     * <p>
+     * Note: This operation is a hint and is not supported on platforms that do
+     * not have this concept.
+     * </p>
+     * 
+     * @return the number of items that are visible
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @since 3.0
+     */
+    public int getVisibleItemCount()
+    {
+        checkWidget();
+        return visibleCount;
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    boolean hasFocus()
+    {
+        int /* long */hwndFocus = OS.GetFocus();
+        if (hwndFocus == handle)
+            return true;
+        if (hwndFocus == 0)
+            return false;
+        int /* long */hwndText = getEditControl();
+        if (hwndFocus == hwndText)
+            return true;
+        int /* long */hwndList = getComboControl();
+        if (hwndFocus == hwndList)
+            return true;
+        return false;
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Searches the receiver's list starting at the first item (index 0) until
+     * an item is found that is equal to the argument, and returns the index of
+     * that item. If no item is found, returns -1.
+     * 
+     * @param string the search item
+     * @return the index of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int indexOf(String string)
+    {
+        return indexOf(string, 0);
+    }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Searches the receiver's list starting at the given, zero-relative index
+     * until an item is found that is equal to the argument, and returns the
+     * index of that item. If no item is found or the starting index is out of
+     * range, returns -1.
+     * 
+     * @param string the search item
+     * @param start the zero-relative index at which to begin the search
+     * @return the index of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int indexOf(String string, int start)
+    {
+        checkWidget();
+        return core.indexOf(string, start);
+    }
+
+    /**
+     * Searches the receiver's list for the first item that contains the
+     * argument, and returns the index of that item. The comparison is case
+     * sensitive. If no item is found, returns -1.
+     * 
+     * @param string the text to search for
+     * @return the index of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #indexOfContaining(String, int, boolean)
+     */
+    public int indexOfContaining(String string)
+    {
+        return indexOfContaining(string, 0, false);
+    }
+
+    /**
+     * Searches the receiver's list starting at the given, zero-relative index
+     * until an item is found that contains the argument, and returns the
+     * index of that item. If no item is found or the starting index is out of
+     * range, returns -1.
+     * <p>
+     * Texts of three or more characters are looked up in a trigram index of
+     * the items that is built on the first call. Appending items keeps the
+     * index, other changes to the list rebuild it on the next call.
+     * </p>
+     * 
+     * @param string the text to search for
+     * @param start the zero-relative index at which to begin the search
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the index of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int indexOfContaining(String string, int start, boolean ignoreCase)
+    {
+        checkWidget();
+        return core.indexOfContaining(string, start, ignoreCase);
+    }
+
+    /**
+     * Searches the receiver's list starting at the given, zero-relative index
+     * until an item is found that starts with the argument, and returns the
+     * index of that item. The comparison is case sensitive. If no item is
+     * found or the starting index is out of range, returns -1.
+     * 
+     * @param prefix the prefix to search for
+     * @param start the zero-relative index at which to begin the search
+     * @return the index of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the prefix is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #findPrefix(String, int, boolean)
+     */
+    public int findPrefix(String prefix, int start)
+    {
+        return findPrefix(prefix, start, false);
+    }
+
+    /**
+     * Searches the receiver's list starting at the given, zero-relative index
+     * until an item is found that starts with the argument, and returns the
+     * index of that item. If no item is found or the starting index is out of
+     * range, returns -1.
+     * <p>
+     * The search uses a sorted index of the items that is built on the first
+     * call, so it does not scan the list.
+     * </p>
+     * 
+     * @param prefix the prefix to search for
+     * @param start the zero-relative index at which to begin the search
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the index of the item
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the prefix is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int findPrefix(String prefix, int start, boolean ignoreCase)
+    {
+        checkWidget();
+        return core.findPrefix(prefix, start, ignoreCase);
+    }
+
+    /**
+     * Returns <code>true</code> if the receiver completes the text typed
+     * by the user with the first matching item, and <code>false</code>
+     * otherwise.
+     * 
+     * @return the auto complete state
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #setAutoComplete(boolean)
+     */
+    public boolean getAutoComplete()
+    {
+        checkWidget();
+        return autoComplete;
+    }
+
+    /**
+     * Sets whether the receiver completes the text typed by the user. When
+     * enabled, typing at the end of the text field completes it with the rest
+     * of the first item that starts with the typed text, ignoring case, and
+     * selects the completed part so that typing on replaces it. Deleting text
+     * does not complete it again. Read only receivers ignore this setting.
+     * 
+     * @param autoComplete the new auto complete state
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setAutoComplete(boolean autoComplete)
+    {
+        checkWidget();
+        this.autoComplete = autoComplete;
+    }
+
+    /**
+     * Completes the text typed by the user with the first item that starts
+     * with it. Called for CBN_EDITCHANGE.
+     */
+    void autoComplete()
+    {
+        if (ignoreAutoComplete)
+        {
+            ignoreAutoComplete = false;
+            return;
+        }
+        int length = OS.GetWindowTextLength(handle);
+        if (length == 0)
+            return;
+        /* Only complete while the caret is at the end of the text */
+        int selection = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETEDITSEL, 0, 0);
+        if (OS.LOWORD(selection) != length || OS.HIWORD(selection) != length)
+            return;
+        String text = getText();
+        int index = core.findPrefix(text, 0, true);
+        if (index == -1)
+            return;
+        String item = core.getItem(index);
+        if (item.length() <= text.length())
+            return;
+        String newText = text + item.substring(text.length());
+        ComboTextBuffer textBuffer = getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(getCodePage(), newText);
+        boolean changed = OS.SetWindowText(handle, buffer);
+        textBuffer.release(buffer);
+        if (!changed)
+            return;
+        OS.SendMessage(handle, OS.CB_SETEDITSEL, 0, OS.MAKELPARAM(length, -1));
+        sendEvent(SWT.Modify);
+    }
+
+    /**
+     * Returns the indices of the items that start with the prefix, ignoring
+     * case, ranked by use: items that were selected more often come first,
+     * and of two items selected equally often the one selected last. Items
+     * that were never selected follow in list order. A selection is recorded
+     * when the user selects an item in the list and when
+     * <code>setText()</code> sets the text of an item.
+     * <p>
+     * Only the best <code>count</code> items are kept while the matches are
+     * ranked, so the cost grows with the number of matches and with
+     * <code>log(count)</code>, not with a full sort.
+     * </p>
+     * 
+     * @param prefix the prefix of the items, empty for all items
+     * @param count the maximum number of indices to return
+     * @return the indices of the best ranked items, best first
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the prefix is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #resetUsage()
+     */
+    public int[] getSuggestions(String prefix, int count)
+    {
+        checkWidget();
+        return core.getSuggestions(prefix, count);
+    }
+
+    /**
+     * Forgets all recorded selections, see
+     * <code>getSuggestions(String, int)</code>.
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void resetUsage()
+    {
+        checkWidget();
+        core.usageStats.clear();
+    }
+
+    /**
+     * Returns <code>true</code> if the receiver's list is filtered by the text
+     * typed by the user, and <code>false</code> otherwise.
+     * 
+     * @return the filter mode
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #setFilterMode(boolean)
+     */
+    public boolean getFilterMode()
+    {
+        checkWidget();
+        return filter != null;
+    }
+
+    /**
+     * Sets whether the receiver's list is filtered by the text typed by the
+     * user.
+     * <p>
+     * When the filter mode is turned on, the current items become the
+     * complete list. Every change of the text typed by the user filters the
+     * complete list on a background thread for the items that contain the
+     * text, ignoring case, and replaces the receiver's list with the matches
+     * when the filter is done. Texts of three or more characters are looked
+     * up in a trigram index of the complete list. A change of the text cancels the filter that
+     * is still running, and results of an older text are never shown. When
+     * the filter mode is turned off, the complete list is shown again.
+     * </p>
+     * <p>
+     * Changes to the list while the filter mode is on only affect the shown
+     * items, which are replaced by the next filter.
+     * </p>
+     * 
+     * @param filterMode the new filter mode
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setFilterMode(boolean filterMode)
+    {
+        checkWidget();
+        if (filterMode == (filter != null))
+            return;
+        if (filterMode)
+        {
+            filter = new ComboFilter(new ComboFilter.Receiver()
+            {
+                public void filtered(final int generation, String query, final String[] items)
+                {
+                    Display display = ComboBoxEx.this.display;
+                    if (display.isDisposed())
+                        return;
+                    try
+                    {
+                        /* All matches of a job are applied in one runnable */
+                        display.asyncExec(new Runnable()
+                        {
+                            public void run()
+                            {
+                                applyFilter(generation, items);
+                            }
+                        });
+                    }
+                    catch (SWTException e)
+                    {
+                        /* The display was disposed in the meantime */
+                    }
+                }
+            });
+            filter.setSource(core.model.getItems());
+        }
+        else
+        {
+            String[] items = filter.getSource();
+            filter.dispose();
+            filter = null;
+            core.updateItems(items);
+        }
+    }
+
+    /**
+     * Shows the matches of a filter job unless a newer job was started since.
+     * Runs on the UI thread.
+     */
+    void applyFilter(int generation, String[] items)
+    {
+        if (isDisposed() || filter == null || !filter.isCurrent(generation))
+            return;
+        core.updateItems(items);
+    }
+
+    /**
+     * Appends the items of the given iterator to the receiver's list in
+     * chunks, yielding to the event loop between them.
+     * <p>
+     * Each chunk adds items until the load budget is used up and the next
+     * chunk runs from the event loop, so the user interface stays responsive
+     * while a long list is loaded. Items are only appended, so the selection
+     * and the text are not changed by loading. The listener, if any, is
+     * notified after every chunk and once when loading ends. Starting a load
+     * cancels the one in progress.
+     * </p>
+     * 
+     * @param items an iterator over the new items, which must be
+     *            <code>String</code>s
+     * @param listener the listener which should be notified or
+     *            <code>null</code>
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the iterator is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the iterator returns an
+     *                item that is not a string (thrown from the event loop
+     *                and ends loading)</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #cancelLoad()
+     * @see #setLoadBudget(int)
+     */
+    public void load(Iterator items, ComboLoadListener listener)
+    {
+        checkWidget();
+        if (items == null)
+            error(SWT.ERROR_NULL_ARGUMENT);
+        cancelLoad();
+        loader = new ComboLoader(core, items, listener, loadBudget * 1000000L);
+        scheduleLoad(loader);
+    }
+
+    /**
+     * Runs the next chunk of the given load from the event loop.
+     */
+    void scheduleLoad(final ComboLoader current)
+    {
+        display.asyncExec(new Runnable()
+        {
+            public void run()
+            {
+                if (isDisposed() || loader != current)
+                    return;
+                boolean more = false;
+                try
+                {
+                    more = current.run();
+                }
+                finally
+                {
+                    if (!more && loader == current)
+                        loader = null;
+                }
+                if (more && !isDisposed())
+                    scheduleLoad(current);
+            }
+        });
+    }
+
+    /**
+     * Cancels loading items started with <code>load()</code>. The items
+     * added so far are kept. Does nothing if no load is in progress.
+     * 
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * 
+     * @see #load(Iterator, ComboLoadListener)
+     */
+    public void cancelLoad()
+    {
+        checkWidget();
+        if (loader == null)
+            return;
+        ComboLoader current = loader;
+        loader = null;
+        current.cancel();
+    }
+
+    /**
+     * Returns <code>true</code> if items are being loaded with
+     * <code>load()</code>, and <code>false</code> otherwise.
      * 
-     * @return the receiver's text
+     * @return the loading state
      * 
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
@@ -1111,25 +2342,20 @@ public class ComboBoxEx extends Composite
      *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
      *                thread that created the receiver</li>
      *                </ul>
+     * 
+     * @see #load(Iterator, ComboLoadListener)
      */
-    public String getText()
+    public boolean isLoading()
     {
         checkWidget();
-        int length = OS.GetWindowTextLength(handle);
-        if (length == 0)
-            return "";
-        TCHAR buffer = new TCHAR(getCodePage(), length + 1);
-        OS.GetWindowText(handle, buffer, length + 1);
-        return buffer.toString(0, length);
+        return loader != null;
     }
 
     /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Returns the height of the receivers's text field.
+     * Returns the time in milliseconds that <code>load()</code> spends
+     * adding items before it yields to the event loop.
      * 
-     * @return the text height
+     * @return the load budget in milliseconds
      * 
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
@@ -1137,33 +2363,27 @@ public class ComboBoxEx extends Composite
      *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
      *                thread that created the receiver</li>
      *                </ul>
+     * 
+     * @see #setLoadBudget(int)
      */
-    public int getTextHeight()
+    public int getLoadBudget()
     {
         checkWidget();
-        COMBOBOXINFO pcbi = new COMBOBOXINFO();
-        pcbi.cbSize = COMBOBOXINFO.sizeof;
-        if (((style & SWT.SIMPLE) == 0) && !OS.IsWinCE && OS.GetComboBoxInfo(handle, pcbi))
-        {
-            return (pcbi.buttonBottom - pcbi.buttonTop) + pcbi.buttonTop * 2;
-        }
-        int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETITEMHEIGHT, -1, 0);
-        if (result == OS.CB_ERR)
-            error(SWT.ERROR_CANNOT_GET_ITEM_HEIGHT);
-        return (style & SWT.DROP_DOWN) != 0 ? result + 6 : result + 10;
+        return loadBudget;
     }
 
     /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Returns the maximum number of characters that the receiver's text field
-     * is capable of holding. If this has not been changed by
-     * <code>setTextLimit()</code>, it will be the constant
-     * <code>Combo.LIMIT</code>.
+     * Sets the time in milliseconds that <code>load()</code> spends adding
+     * items before it yields to the event loop. The default is 8
+     * milliseconds. A load in progress uses the new budget from its next
+     * chunk on.
      * 
-     * @return the text limit
+     * @param budget the new load budget in milliseconds
      * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_ARGUMENT - if the budget is not
+     *                positive</li>
+     *                </ul>
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
      *                disposed</li>
@@ -1171,29 +2391,26 @@ public class ComboBoxEx extends Composite
      *                thread that created the receiver</li>
      *                </ul>
      * 
-     * @see #LIMIT
+     * @see #load(Iterator, ComboLoadListener)
      */
-    public int getTextLimit()
+    public void setLoadBudget(int budget)
     {
         checkWidget();
-        int /* long */hwndText = getEditControl();
-        if (hwndText == 0)
-            return LIMIT;
-        return (int) /* 64 */OS.SendMessage(hwndText, OS.EM_GETLIMITTEXT, 0, 0) & 0x7FFFFFFF;
+        if (budget <= 0)
+            error(SWT.ERROR_INVALID_ARGUMENT);
+        loadBudget = budget;
+        if (loader != null)
+            loader.budget = budget * 1000000L;
     }
 
     /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Gets the number of items that are visible in the drop down portion of the
-     * receiver's list.
+     * Returns the queue through which other threads change the receiver.
      * <p>
-     * Note: This operation is a hint and is not supported on platforms that do
-     * not have this concept.
+     * The queue may be passed to and used from any thread. Its changes are
+     * applied in one batch per run of the event loop.
      * </p>
      * 
-     * @return the number of items that are visible
+     * @return the mutation queue
      * 
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
@@ -1202,119 +2419,67 @@ public class ComboBoxEx extends Composite
      *                thread that created the receiver</li>
      *                </ul>
      * 
-     * @since 3.0
+     * @see ComboMutationQueue
      */
-    public int getVisibleItemCount()
+    public ComboMutationQueue getMutationQueue()
     {
         checkWidget();
-        return visibleCount;
-    }
-
-    /**
-     * TODO CLEAN/COMMENT
-     */
-    boolean hasFocus()
-    {
-        int /* long */hwndFocus = OS.GetFocus();
-        if (hwndFocus == handle)
-            return true;
-        if (hwndFocus == 0)
-            return false;
-        int /* long */hwndText = getEditControl();
-        if (hwndFocus == hwndText)
-            return true;
-        int /* long */hwndList = getComboControl();
-        if (hwndFocus == hwndList)
-            return true;
-        return false;
+        if (mutationQueue == null)
+            mutationQueue = new ComboMutationQueue(this);
+        return mutationQueue;
     }
 
     /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Searches the receiver's list starting at the first item (index 0) until
-     * an item is found that is equal to the argument, and returns the index of
-     * that item. If no item is found, returns -1.
+     * Returns the shared model the receiver is bound to.
      * 
-     * @param string the search item
-     * @return the index of the item
+     * @return the model or <code>null</code> if the receiver is not bound
      * 
-     * @exception IllegalArgumentException <ul>
-     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
-     *                </ul>
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
      *                disposed</li>
      *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
      *                thread that created the receiver</li>
      *                </ul>
+     * 
+     * @see #setModel(ComboSharedModel)
      */
-    public int indexOf(String string)
+    public ComboSharedModel getModel()
     {
-        return indexOf(string, 0);
+        checkWidget();
+        return sharedModel;
     }
 
     /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Searches the receiver's list starting at the given, zero-relative index
-     * until an item is found that is equal to the argument, and returns the
-     * index of that item. If no item is found or the starting index is out of
-     * range, returns -1.
+     * Binds the receiver to a model shared with other combos.
+     * <p>
+     * The receiver's list is replaced by the items of the model and follows
+     * every change of the model from then on. Combos bound to the same model
+     * share the measured widths of the items. Changes made to the receiver's
+     * list directly are replaced by the next change of the model. When the
+     * receiver is unbound, with <code>null</code>, it keeps its items.
+     * </p>
      * 
-     * @param string the search item
-     * @param start the zero-relative index at which to begin the search
-     * @return the index of the item
+     * @param model the model or <code>null</code>
      * 
-     * @exception IllegalArgumentException <ul>
-     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
-     *                </ul>
      * @exception SWTException <ul>
      *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
      *                disposed</li>
      *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
      *                thread that created the receiver</li>
      *                </ul>
+     * 
+     * @see ComboSharedModel
      */
-    public int indexOf(String string, int start)
+    public void setModel(ComboSharedModel model)
     {
         checkWidget();
-        if (string == null)
-            error(SWT.ERROR_NULL_ARGUMENT);
-
-        /*
-         * Bug in Windows. For some reason, CB_FINDSTRINGEXACT will not find
-         * empty strings even though it is legal to insert an empty string into
-         * a combo. The fix is to search the combo, an item at a time.
-         */
-        if (string.length() == 0)
-        {
-            int count = getItemCount();
-            for (int i = start; i < count; i++)
-            {
-                if (string.equals(getItem(i)))
-                    return i;
-            }
-            return -1;
-        }
-
-        /* Use CB_FINDSTRINGEXACT to search for the item */
-        int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-        if (!(0 <= start && start < count))
-            return -1;
-        int index = start - 1, last = 0;
-        TCHAR buffer = new TCHAR(getCodePage(), string, true);
-        do
-        {
-            index =
-                (int) /* 64 */OS.SendMessage(handle, OS.CB_FINDSTRINGEXACT, last = index, buffer);
-            if (index == OS.CB_ERR || index <= last)
-                return -1;
-        }
-        while (!string.equals(getItem(index)));
-        return index;
+        if (model == sharedModel)
+            return;
+        if (sharedModel != null)
+            sharedModel.unbind(this);
+        sharedModel = model;
+        if (model != null)
+            model.bind(this);
     }
 
     /**
@@ -1366,6 +2531,118 @@ public class ComboBoxEx extends Composite
         OS.SendMessage(handle, OS.WM_PASTE, 0, 0);
     }
 
+    /**
+     * Redraws the list portion of the receiver, including the drop down list
+     * when it is visible.
+     */
+    void redrawList()
+    {
+        COMBOBOXINFO pcbi = new COMBOBOXINFO();
+        pcbi.cbSize = COMBOBOXINFO.sizeof;
+
+        int /*long*/ hwndCombo = getComboControl();
+        if (hwndCombo != 0 && !OS.IsWinCE && OS.GetComboBoxInfo(hwndCombo, pcbi))
+        {
+            if (pcbi.hwndList != 0)
+            {
+                OS.InvalidateRect(pcbi.hwndList, null, true);
+            }
+        }
+
+        OS.InvalidateRect(handle, null, true);
+    }
+
+    /**
+     * Releases the native resources held by the receiver.
+     */
+    void releaseWidget()
+    {
+        super.releaseWidget();
+
+        core.release();
+        textBuffer = null;
+        if (filter != null)
+        {
+            filter.dispose();
+            filter = null;
+        }
+        if (loader != null)
+        {
+            loader.cancel();
+            loader = null;
+        }
+        if (mutationQueue != null)
+        {
+            mutationQueue.dispose();
+            mutationQueue = null;
+        }
+        if (sharedModel != null)
+        {
+            sharedModel.combos.remove(this);
+            sharedModel = null;
+        }
+    }
+
+    /**
+     * Returns the receiver to the state of a new widget so that a
+     * <code>ComboBoxExPool</code> can hand it out again. An open batch of
+     * updates is ended, the <code>SWT.Dispose</code> listeners are notified as
+     * if the combo was disposed, then the items, the text, all listeners, the
+     * application data, the text limit and the optional modes are cleared.
+     */
+    void recycle()
+    {
+        if (loader != null)
+        {
+            loader.cancel();
+            loader = null;
+        }
+        if (mutationQueue != null)
+        {
+            mutationQueue.dispose();
+            mutationQueue = null;
+        }
+        if (sharedModel != null)
+        {
+            sharedModel.unbind(this);
+            sharedModel = null;
+        }
+        if (filter != null)
+        {
+            filter.dispose();
+            filter = null;
+        }
+        while (core.updateCount > 0)
+        {
+            core.endUpdate();
+        }
+        sendEvent(SWT.Dispose);
+        if (isDisposed())
+            return;
+        eventTable = null;
+        state &= ~KEYED_DATA;
+        data = null;
+        autoComplete = false;
+        loadBudget = 8;
+        messageStats = null;
+        core.usageStats.clear();
+        core.removeAll();
+        if ((style & SWT.READ_ONLY) == 0)
+        {
+            OS.SendMessage(handle, OS.CB_LIMITTEXT, LIMIT, 0);
+            setText("");
+        }
+        if (visibleCount != 5)
+            setVisibleItemCount(5);
+        setLayoutData(null);
+        setToolTipText(null);
+        setMenu(null);
+        setFont(null);
+        setForeground(null);
+        setBackground(null);
+        setEnabled(true);
+    }
+
     /**
      * TODO CLEAN/COMMENT
      */
@@ -1412,149 +2689,35 @@ public class ComboBoxEx extends Composite
      */
     void remove(int index, boolean notify)
     {
-        TCHAR buffer = null;
-        if ((style & SWT.H_SCROLL) != 0)
-        {
-            int length = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXTLEN, index, 0);
-            if (length == OS.CB_ERR)
-            {
-                int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-                if (0 <= index && index < count)
-                    error(SWT.ERROR_ITEM_NOT_REMOVED);
-                error(SWT.ERROR_INVALID_RANGE);
-            }
-            buffer = new TCHAR(getCodePage(), length + 1);
-            int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXT, index, buffer);
-            if (result == OS.CB_ERR)
-            {
-                int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-                if (0 <= index && index < count)
-                    error(SWT.ERROR_ITEM_NOT_REMOVED);
-                error(SWT.ERROR_INVALID_RANGE);
-            }
-        }
-        int length = OS.GetWindowTextLength(handle);
-        int code = (int) /* 64 */OS.SendMessage(handle, OS.CB_DELETESTRING, index, 0);
-        if (code == OS.CB_ERR)
-        {
-            int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-            if (0 <= index && index < count)
-                error(SWT.ERROR_ITEM_NOT_REMOVED);
-            error(SWT.ERROR_INVALID_RANGE);
-        }
-        if ((style & SWT.H_SCROLL) != 0)
-            setScrollWidth(buffer, true);
-        if (notify && length != OS.GetWindowTextLength(handle))
-        {
-            sendEvent(SWT.Modify);
-            if (isDisposed())
-                return;
-        }
-        /*
-         * Bug in Windows. When the combo box is read only with exactly one item
-         * that is currently selected and that item is removed, the combo box
-         * does not redraw to clear the text area. The fix is to force a redraw.
-         */
-        if ((style & SWT.READ_ONLY) != 0)
-        {
-            int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-            if (count == 0)
-                OS.InvalidateRect(handle, null, true);
-        }
+        core.remove(index, notify);
     }
-
-    /**
-     * TODO CLEAN/COMMENT
-     */
-    /**
-     * Removes the items from the receiver's list which are between the given
-     * zero-relative start and end indices (inclusive).
-     * 
-     * @param start the start of the range
-     * @param end the end of the range
-     * 
-     * @exception IllegalArgumentException <ul>
-     *                <li>ERROR_INVALID_RANGE - if either the start or end are
-     *                not between 0 and the number of elements in the list minus
-     *                1 (inclusive)</li>
-     *                </ul>
-     * @exception SWTException <ul>
-     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
-     *                disposed</li>
-     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
-     *                thread that created the receiver</li>
-     *                </ul>
-     */
-    public void remove(int start, int end)
-    {
-        checkWidget();
-        if (start > end)
-            return;
-        int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-        if (!(0 <= start && start <= end && end < count))
-        {
-            error(SWT.ERROR_INVALID_RANGE);
-        }
-        int textLength = OS.GetWindowTextLength(handle);
-        RECT rect = null;
-        int /* long */hDC = 0, oldFont = 0, newFont = 0;
-        int newWidth = 0;
-        if ((style & SWT.H_SCROLL) != 0)
-        {
-            rect = new RECT();
-            hDC = OS.GetDC(handle);
-            newFont = OS.SendMessage(handle, OS.WM_GETFONT, 0, 0);
-            if (newFont != 0)
-                oldFont = OS.SelectObject(hDC, newFont);
-        }
-        int cp = getCodePage();
-        int flags = OS.DT_CALCRECT | OS.DT_SINGLELINE | OS.DT_NOPREFIX;
-        for (int i = start; i <= end; i++)
-        {
-            TCHAR buffer = null;
-            if ((style & SWT.H_SCROLL) != 0)
-            {
-                int length = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXTLEN, start, 0);
-                if (length == OS.CB_ERR)
-                    break;
-                buffer = new TCHAR(cp, length + 1);
-                int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXT, start, buffer);
-                if (result == OS.CB_ERR)
-                    break;
-            }
-            int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_DELETESTRING, start, 0);
-            if (result == OS.CB_ERR)
-                error(SWT.ERROR_ITEM_NOT_REMOVED);
-            if ((style & SWT.H_SCROLL) != 0)
-            {
-                OS.DrawText(hDC, buffer, -1, rect, flags);
-                newWidth = Math.max(newWidth, rect.right - rect.left);
-            }
-        }
-        if ((style & SWT.H_SCROLL) != 0)
-        {
-            if (newFont != 0)
-                OS.SelectObject(hDC, oldFont);
-            OS.ReleaseDC(handle, hDC);
-            setScrollWidth(newWidth, false);
-        }
-        if (textLength != OS.GetWindowTextLength(handle))
-        {
-            sendEvent(SWT.Modify);
-            if (isDisposed())
-                return;
-        }
-        /*
-         * Bug in Windows. When the combo box is read only with exactly one item
-         * that is currently selected and that item is removed, the combo box
-         * does not redraw to clear the text area. The fix is to force a redraw.
-         */
-        if ((style & SWT.READ_ONLY) != 0)
-        {
-            count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-            if (count == 0)
-                OS.InvalidateRect(handle, null, true);
-        }
+
+    /**
+     * TODO CLEAN/COMMENT
+     */
+    /**
+     * Removes the items from the receiver's list which are between the given
+     * zero-relative start and end indices (inclusive).
+     * 
+     * @param start the start of the range
+     * @param end the end of the range
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_RANGE - if either the start or end are
+     *                not between 0 and the number of elements in the list minus
+     *                1 (inclusive)</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void remove(int start, int end)
+    {
+        checkWidget();
+        core.remove(start, end);
     }
 
     /**
@@ -1605,12 +2768,7 @@ public class ComboBoxEx extends Composite
     public void removeAll()
     {
         checkWidget();
-        OS.SendMessage(handle, OS.CB_RESETCONTENT, 0, 0);
-        sendEvent(SWT.Modify);
-        if (isDisposed())
-            return;
-        if ((style & SWT.H_SCROLL) != 0)
-            setScrollWidth(0);
+        core.removeAll();
     }
 
     /**
@@ -1712,6 +2870,20 @@ public class ComboBoxEx extends Composite
         eventTable.unhook(SWT.Verify, listener);
     }
 
+    /**
+     * Holds Modify and Selection events while the receiver is between
+     * <code>beginUpdate()</code> and <code>endUpdate()</code>.
+     */
+    void sendEvent(int eventType)
+    {
+        if (core != null && core.holdEvent(eventType))
+        {
+            return;
+        }
+
+        super.sendEvent(eventType);
+    }
+
     /**
      * TODO CLEAN/COMMENT
      */
@@ -1817,9 +2989,11 @@ public class ComboBoxEx extends Composite
             return false;
         if (newText == oldText)
             return true;
-        TCHAR buffer = new TCHAR(getCodePage(), newText, true);
+        ComboTextBuffer textBuffer = getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(getCodePage(), newText);
         OS.SendMessage(hwndText, OS.EM_SETSEL, start[0], end[0]);
         OS.SendMessage(hwndText, OS.EM_REPLACESEL, 0, buffer);
+        textBuffer.release(buffer);
         return false;
     }
 
@@ -1836,19 +3010,7 @@ public class ComboBoxEx extends Composite
     public void select(int index)
     {
         checkWidget();
-
-        int count = (int) OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-
-        if (0 <= index && index < count)
-        {
-            int selection = (int) OS.SendMessage(handle, OS.CB_GETCURSEL, 0, 0);
-            int code = (int) OS.SendMessage(handle, OS.CB_SETCURSEL, index, 0);
-
-            if (code != OS.CB_ERR && code != selection)
-            {
-                sendEvent(SWT.Modify);
-            }
-        }
+        core.select(index);
     }
 
     /**
@@ -1955,9 +3117,10 @@ public class ComboBoxEx extends Composite
     public void setFont(Font font)
     {
         checkWidget();
+        core.fontChanging();
         super.setFont(font);
         if ((style & SWT.H_SCROLL) != 0)
-            setScrollWidth();
+            core.setScrollWidth();
     }
 
     /**
@@ -2000,15 +3163,47 @@ public class ComboBoxEx extends Composite
     public void setItem(int index, Image image, String string)
     {
         checkWidget();
-        if (string == null)
-            error(SWT.ERROR_NULL_ARGUMENT);
-        int selection = getSelectionIndex();
-        remove(index, false);
+        core.setItem(index, image, string);
+    }
+
+    /**
+     * Requests the contents of an item of a virtual receiver by sending
+     * <code>SWT.SetData</code>. The listener answers by filling in the
+     * <code>text</code> and <code>image</code> fields of the event, the index
+     * of the item is in the <code>index</code> field.
+     * 
+     * @param index the index of the item
+     */
+    void setData(int index)
+    {
+        Event event = new Event();
+        event.index = index;
+        sendEvent(SWT.SetData, event);
+
         if (isDisposed())
+        {
             return;
-        add(string, image, index);
-        if (selection != -1)
-            select(selection);
+        }
+
+        core.setVirtualItem(index, event.text, event.image);
+    }
+
+    /**
+     * Sets the number of items contained in the receiver.
+     * <p>
+     * For a receiver created with the <code>SWT.VIRTUAL</code> style the new
+     * items are only placeholders; their text and image are requested with
+     * <code>SWT.SetData</code> when they become visible in the list or are
+     * read by the application. Otherwise empty items are appended or items
+     * are removed from the end of the list.
+     * </p>
+     * 
+     * @param count the number of items
+     */
+    public void setItemCount(int count)
+    {
+        checkWidget();
+        core.setItemCount(count);
     }
 
     /**
@@ -2033,55 +3228,38 @@ public class ComboBoxEx extends Composite
      */
     public void setItems(String[] items)
     {
-        checkWidget();
-        if (items == null)
-            error(SWT.ERROR_NULL_ARGUMENT);
-        for (int i = 0; i < items.length; i++)
-        {
-            if (items[i] == null)
-                error(SWT.ERROR_INVALID_ARGUMENT);
-        }
-        RECT rect = null;
-        int /* long */hDC = 0, oldFont = 0, newFont = 0;
-        int newWidth = 0;
-        if ((style & SWT.H_SCROLL) != 0)
-        {
-            rect = new RECT();
-            hDC = OS.GetDC(handle);
-            newFont = OS.SendMessage(handle, OS.WM_GETFONT, 0, 0);
-            if (newFont != 0)
-                oldFont = OS.SelectObject(hDC, newFont);
-            setScrollWidth(0);
-        }
-        OS.SendMessage(handle, OS.CB_RESETCONTENT, 0, 0);
-        int codePage = getCodePage();
-        for (int i = 0; i < items.length; i++)
-        {
-
-            String string = items[i];
-            TCHAR buffer = new TCHAR(codePage, string, true);
-//            int code = (int) /* 64 */OS.SendMessage(handle, OS.CB_ADDSTRING, 0, buffer);
-//            if (code == OS.CB_ERR)
-//                error(SWT.ERROR_ITEM_NOT_ADDED);
-//            if (code == OS.CB_ERRSPACE)
-//                error(SWT.ERROR_ITEM_NOT_ADDED);
+        setItems(items, null);
+    }
 
-            if ((style & SWT.H_SCROLL) != 0)
-            {
-                int flags = OS.DT_CALCRECT | OS.DT_SINGLELINE | OS.DT_NOPREFIX;
-                OS.DrawText(hDC, buffer, -1, rect, flags);
-                newWidth = Math.max(newWidth, rect.right - rect.left);
-            }
-        }
-        if ((style & SWT.H_SCROLL) != 0)
-        {
-            if (newFont != 0)
-                OS.SelectObject(hDC, oldFont);
-            OS.ReleaseDC(handle, hDC);
-            setScrollWidth(newWidth + 3);
-        }
-        sendEvent(SWT.Modify);
-        // widget could be disposed at this point
+    /**
+     * Sets the receiver's list to be the given array of items and images.
+     * <p>
+     * The items are inserted in one batch: storage is preallocated with
+     * <code>CB_INITSTORAGE</code>, redraw is suspended until all items are
+     * inserted and a single <code>SWT.Modify</code> is sent at the end.
+     * </p>
+     * 
+     * @param items the array of items
+     * @param images the array of images, or <code>null</code> if the items
+     *            have no images
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the items array is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if an item in the items array
+     *                is null or the images array does not have the same length
+     *                as the items array</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setItems(String[] items, Image[] images)
+    {
+        checkWidget();
+        core.setItems(items, images);
     }
 
     /**
@@ -2184,124 +3362,6 @@ public class ComboBoxEx extends Composite
         }
     }
 
-    /**
-     * TODO CLEAN/COMMENT
-     */
-    void setScrollWidth()
-    {
-        int newWidth = 0;
-        RECT rect = new RECT();
-        int /* long */newFont, oldFont = 0;
-        int /* long */hDC = OS.GetDC(handle);
-        newFont = OS.SendMessage(handle, OS.WM_GETFONT, 0, 0);
-        if (newFont != 0)
-            oldFont = OS.SelectObject(hDC, newFont);
-        int cp = getCodePage();
-        int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-        int flags = OS.DT_CALCRECT | OS.DT_SINGLELINE | OS.DT_NOPREFIX;
-        for (int i = 0; i < count; i++)
-        {
-            int length = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXTLEN, i, 0);
-            if (length != OS.CB_ERR)
-            {
-                TCHAR buffer = new TCHAR(cp, length + 1);
-                int result = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETLBTEXT, i, buffer);
-                if (result != OS.CB_ERR)
-                {
-                    OS.DrawText(hDC, buffer, -1, rect, flags);
-                    newWidth = Math.max(newWidth, rect.right - rect.left);
-                }
-            }
-        }
-        if (newFont != 0)
-            OS.SelectObject(hDC, oldFont);
-        OS.ReleaseDC(handle, hDC);
-        setScrollWidth(newWidth + 3);
-    }
-
-    /**
-     * TODO CLEAN/COMMENT
-     */
-    void setScrollWidth(int scrollWidth)
-    {
-        this.scrollWidth = scrollWidth;
-        if ((style & SWT.SIMPLE) != 0)
-        {
-            OS.SendMessage(handle, OS.CB_SETHORIZONTALEXTENT, scrollWidth, 0);
-            return;
-        }
-        boolean scroll = false;
-        int count = (int) /* 64 */OS.SendMessage(handle, OS.CB_GETCOUNT, 0, 0);
-        if (count > 3)
-        {
-            int maxWidth = 0;
-            if (OS.IsWinCE || OS.WIN32_VERSION < OS.VERSION(4, 10))
-            {
-                RECT rect = new RECT();
-                OS.SystemParametersInfo(OS.SPI_GETWORKAREA, 0, rect, 0);
-                maxWidth = (rect.right - rect.left) / 4;
-            }
-            else
-            {
-                int /* long */hmonitor = OS.MonitorFromWindow(handle, OS.MONITOR_DEFAULTTONEAREST);
-                MONITORINFO lpmi = new MONITORINFO();
-                lpmi.cbSize = MONITORINFO.sizeof;
-                OS.GetMonitorInfo(hmonitor, lpmi);
-                maxWidth = (lpmi.rcWork_right - lpmi.rcWork_left) / 4;
-            }
-            scroll = scrollWidth > maxWidth;
-        }
-        if (scroll)
-        {
-            OS.SendMessage(handle, OS.CB_SETDROPPEDWIDTH, 0, 0);
-            OS.SendMessage(handle, OS.CB_SETHORIZONTALEXTENT, scrollWidth, 0);
-        }
-        else
-        {
-            scrollWidth += OS.GetSystemMetrics(OS.SM_CYHSCROLL);
-            OS.SendMessage(handle, OS.CB_SETDROPPEDWIDTH, scrollWidth, 0);
-            OS.SendMessage(handle, OS.CB_SETHORIZONTALEXTENT, 0, 0);
-        }
-    }
-
-    /**
-     * TODO CLEAN/COMMENT
-     */
-    void setScrollWidth(TCHAR buffer, boolean grow)
-    {
-        RECT rect = new RECT();
-        int /* long */newFont, oldFont = 0;
-        int /* long */hDC = OS.GetDC(handle);
-        newFont = OS.SendMessage(handle, OS.WM_GETFONT, 0, 0);
-        if (newFont != 0)
-            oldFont = OS.SelectObject(hDC, newFont);
-        int flags = OS.DT_CALCRECT | OS.DT_SINGLELINE | OS.DT_NOPREFIX;
-        OS.DrawText(hDC, buffer, -1, rect, flags);
-        if (newFont != 0)
-            OS.SelectObject(hDC, oldFont);
-        OS.ReleaseDC(handle, hDC);
-        setScrollWidth(rect.right - rect.left, grow);
-    }
-
-    /**
-     * TODO CLEAN/COMMENT
-     */
-    void setScrollWidth(int newWidth, boolean grow)
-    {
-        if (grow)
-        {
-            if (newWidth <= scrollWidth)
-                return;
-            setScrollWidth(newWidth + 3);
-        }
-        else
-        {
-            if (newWidth < scrollWidth)
-                return;
-            setScrollWidth();
-        }
-    }
-
     /**
      * TODO CLEAN/COMMENT
      */
@@ -2370,7 +3430,10 @@ public class ComboBoxEx extends Composite
         {
             int index = indexOf(string);
             if (index != -1)
+            {
+                core.usageStats.record(string);
                 select(index);
+            }
             return;
         }
         int limit = LIMIT;
@@ -2381,9 +3444,13 @@ public class ComboBoxEx extends Composite
         }
         if (string.length() > limit)
             string = string.substring(0, limit);
-        TCHAR buffer = new TCHAR(getCodePage(), string, true);
-        if (OS.SetWindowText(handle, buffer))
+        ComboTextBuffer textBuffer = getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(getCodePage(), string);
+        boolean changed = OS.SetWindowText(handle, buffer);
+        textBuffer.release(buffer);
+        if (changed)
         {
+            core.recordUsage(string);
             sendEvent(SWT.Modify);
             // widget could be disposed at this point
         }
@@ -2550,6 +3617,44 @@ public class ComboBoxEx extends Composite
         return super.traverseReturn();
     }
 
+    /**
+     * Changes the receiver's list to the given array of items by inserting
+     * and removing only the items that differ from the current ones.
+     * <p>
+     * The difference is computed with a minimal edit script, so the number of
+     * native calls grows with the number of changed items rather than with
+     * the length of the list. Items that are kept keep their images; new
+     * items have none. The selection stays on the same item, or moves to an
+     * equal item if the selected item was moved, and at most one
+     * <code>SWT.Modify</code> is sent.
+     * </p>
+     * 
+     * @param items the array of items
+     * 
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the items array is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if an item in the items array
+     *                is null</li>
+     *                </ul>
+     * @exception SWTException <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                <li>ERROR_ITEM_NOT_ADDED - if an item could not be
+     *                added</li>
+     *                <li>ERROR_ITEM_NOT_REMOVED - if an item could not be
+     *                removed</li>
+     *                </ul>
+     * 
+     * @see #setItems(String[])
+     */
+    public void updateItems(String[] items)
+    {
+        checkWidget();
+        core.updateItems(items);
+    }
+
     /**
      * TODO CLEAN/COMMENT
      */
@@ -2675,14 +3780,119 @@ public class ComboBoxEx extends Composite
      */
     int /* long */windowProc()
     {
-        return ComboBoxProc;
+        return getComboBoxProc();
     }
 
     /**
-     * TODO CLEAN/COMMENT
+     * Calls the handler of a child control message.
+     * 
+     * @param code the handler code of the message from
+     *            <code>CHILD_DISPATCH</code>
+     * @return the result of the handler or <code>null</code>
+     */
+    LRESULT dispatchChild(int code, int /* long */hwnd, int msg, int /* long */wParam,
+        int /* long */lParam)
+    {
+        switch (code)
+        {
+            /* Keyboard messages */
+            case CHILD_CHAR:
+                return wmChar(hwnd, wParam, lParam);
+            case CHILD_IME_CHAR:
+                return wmIMEChar(hwnd, wParam, lParam);
+            case CHILD_KEYDOWN:
+                return wmKeyDown(hwnd, wParam, lParam);
+            case CHILD_KEYUP:
+                return wmKeyUp(hwnd, wParam, lParam);
+            case CHILD_SYSCHAR:
+                return wmSysChar(hwnd, wParam, lParam);
+            case CHILD_SYSKEYDOWN:
+                return wmSysKeyDown(hwnd, wParam, lParam);
+            case CHILD_SYSKEYUP:
+                return wmSysKeyUp(hwnd, wParam, lParam);
+
+            /* Mouse Messages */
+            case CHILD_CAPTURECHANGED:
+                return wmCaptureChanged(hwnd, wParam, lParam);
+            case CHILD_LBUTTONDBLCLK:
+                return wmLButtonDblClk(hwnd, wParam, lParam);
+            case CHILD_LBUTTONDOWN:
+                return wmLButtonDown(hwnd, wParam, lParam);
+            case CHILD_LBUTTONUP:
+                return wmLButtonUp(hwnd, wParam, lParam);
+            case CHILD_MBUTTONDBLCLK:
+                return wmMButtonDblClk(hwnd, wParam, lParam);
+            case CHILD_MBUTTONDOWN:
+                return wmMButtonDown(hwnd, wParam, lParam);
+            case CHILD_MBUTTONUP:
+                return wmMButtonUp(hwnd, wParam, lParam);
+            case CHILD_MOUSEHOVER:
+                return wmMouseHover(hwnd, wParam, lParam);
+            case CHILD_MOUSELEAVE:
+                return wmMouseLeave(hwnd, wParam, lParam);
+            case CHILD_MOUSEMOVE:
+                return wmMouseMove(hwnd, wParam, lParam);
+            case CHILD_RBUTTONDBLCLK:
+                return wmRButtonDblClk(hwnd, wParam, lParam);
+            case CHILD_RBUTTONDOWN:
+                return wmRButtonDown(hwnd, wParam, lParam);
+            case CHILD_RBUTTONUP:
+                return wmRButtonUp(hwnd, wParam, lParam);
+            case CHILD_XBUTTONDBLCLK:
+                return wmXButtonDblClk(hwnd, wParam, lParam);
+            case CHILD_XBUTTONDOWN:
+                return wmXButtonDown(hwnd, wParam, lParam);
+            case CHILD_XBUTTONUP:
+                return wmXButtonUp(hwnd, wParam, lParam);
+
+            /* Paint messages */
+            case CHILD_PAINT:
+                return wmPaint(hwnd, wParam, lParam);
+
+            /* Menu messages */
+            case CHILD_CONTEXTMENU:
+                return wmContextMenu(hwnd, wParam, lParam);
+
+            /* Clipboard messages */
+            case CHILD_CLIPBOARD:
+                if (hwnd == getEditControl())
+                {
+                    return wmClipboard(hwnd, msg, wParam, lParam);
+                }
+                return null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Handles a message of the control or one of its child controls. When
+     * message statistics are enabled the message is counted and timed.
      */
     int /* long */windowProc(int /* long */hwnd, int msg, int /* long */wParam,
         int /* long */lParam)
+    {
+        if (messageStats == null)
+            return dispatchMessage(hwnd, msg, wParam, lParam);
+        long start = System.nanoTime();
+        try
+        {
+            return dispatchMessage(hwnd, msg, wParam, lParam);
+        }
+        finally
+        {
+            if (messageStats != null)
+                messageStats.record(msg, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Routes a message of the child controls through the
+     * <code>CHILD_DISPATCH</code> table and messages of the control itself
+     * to the superclass.
+     */
+    int /* long */dispatchMessage(int /* long */hwnd, int msg, int /* long */wParam,
+        int /* long */lParam)
     {
         if (handle == 0)
             return 0;
@@ -2693,106 +3903,9 @@ public class ComboBoxEx extends Composite
             if ((hwndText != 0 && hwnd == hwndText) || (hwndList != 0 && hwnd == hwndList))
             {
                 LRESULT result = null;
-                switch (msg)
-                {
-                    /* Keyboard messages */
-                    case OS.WM_CHAR:
-                        result = wmChar(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_IME_CHAR:
-                        result = wmIMEChar(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_KEYDOWN:
-                        result = wmKeyDown(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_KEYUP:
-                        result = wmKeyUp(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_SYSCHAR:
-                        result = wmSysChar(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_SYSKEYDOWN:
-                        result = wmSysKeyDown(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_SYSKEYUP:
-                        result = wmSysKeyUp(hwnd, wParam, lParam);
-                        break;
-
-                    /* Mouse Messages */
-                    case OS.WM_CAPTURECHANGED:
-                        result = wmCaptureChanged(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_LBUTTONDBLCLK:
-                        result = wmLButtonDblClk(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_LBUTTONDOWN:
-                        result = wmLButtonDown(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_LBUTTONUP:
-                        result = wmLButtonUp(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_MBUTTONDBLCLK:
-                        result = wmMButtonDblClk(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_MBUTTONDOWN:
-                        result = wmMButtonDown(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_MBUTTONUP:
-                        result = wmMButtonUp(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_MOUSEHOVER:
-                        result = wmMouseHover(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_MOUSELEAVE:
-                        result = wmMouseLeave(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_MOUSEMOVE:
-                        result = wmMouseMove(hwnd, wParam, lParam);
-                        break;
-                    // case OS.WM_MOUSEWHEEL: result = wmMouseWheel (hwnd,
-                    // wParam, lParam); break;
-                    case OS.WM_RBUTTONDBLCLK:
-                        result = wmRButtonDblClk(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_RBUTTONDOWN:
-                        result = wmRButtonDown(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_RBUTTONUP:
-                        result = wmRButtonUp(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_XBUTTONDBLCLK:
-                        result = wmXButtonDblClk(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_XBUTTONDOWN:
-                        result = wmXButtonDown(hwnd, wParam, lParam);
-                        break;
-                    case OS.WM_XBUTTONUP:
-                        result = wmXButtonUp(hwnd, wParam, lParam);
-                        break;
-
-                    /* Paint messages */
-                    case OS.WM_PAINT:
-                        result = wmPaint(hwnd, wParam, lParam);
-                        break;
-
-                    /* Menu messages */
-                    case OS.WM_CONTEXTMENU:
-                        result = wmContextMenu(hwnd, wParam, lParam);
-                        break;
-
-                    /* Clipboard messages */
-                    case OS.WM_CLEAR:
-                    case OS.WM_CUT:
-                    case OS.WM_PASTE:
-                    case OS.WM_UNDO:
-                    case OS.EM_UNDO:
-                    case OS.WM_SETTEXT:
-                        if (hwnd == hwndText)
-                        {
-                            result = wmClipboard(hwnd, msg, wParam, lParam);
-                        }
-                        break;
-                }
+                int code = msg >= 0 && msg < CHILD_DISPATCH.length ? CHILD_DISPATCH[msg] : CHILD_NONE;
+                if (code != CHILD_NONE)
+                    result = dispatchChild(code, hwnd, msg, wParam, lParam);
                 if (result != null)
                     return result.value;
                 return callWindowProc(hwnd, msg, wParam, lParam);
@@ -2987,7 +4100,7 @@ public class ComboBoxEx extends Composite
                 int length = OS.GetWindowTextLength(handle);
                 if (length != 0)
                 {
-                    buffer = new TCHAR(getCodePage(), length + 1);
+                    buffer = getTextBuffer().acquire(getCodePage(), length + 1);
                     OS.GetWindowText(handle, buffer, length + 1);
                     start = new int[1];
                     end = new int[1];
@@ -3009,6 +4122,7 @@ public class ComboBoxEx extends Composite
             if (buffer != null)
             {
                 OS.SetWindowText(handle, buffer);
+                getTextBuffer().release(buffer);
                 int /* long */bits = OS.MAKELPARAM(start[0], end[0]);
                 OS.SendMessage(handle, OS.CB_SETEDITSEL, 0, bits);
                 if (redraw)
@@ -3022,7 +4136,7 @@ public class ComboBoxEx extends Composite
          * been resized.
          */
         if ((style & SWT.H_SCROLL) != 0)
-            setScrollWidth(scrollWidth);
+            core.setScrollWidth(core.scrollWidth);
         return result;
     }
 
@@ -3168,9 +4282,11 @@ public class ComboBoxEx extends Composite
                     OS.SendMessage(hwndText, OS.EM_GETSEL, newStart, newEnd);
                     if (length != 0 && newStart[0] != newEnd[0])
                     {
-                        TCHAR buffer = new TCHAR(getCodePage(), length + 1);
+                        ComboTextBuffer textBuffer = getTextBuffer();
+                        TCHAR buffer = textBuffer.acquire(getCodePage(), length + 1);
                         OS.GetWindowText(hwndText, buffer, length + 1);
                         newText = buffer.toString(newStart[0], newEnd[0] - newStart[0]);
+                        textBuffer.release(buffer);
                     }
                     else
                     {
@@ -3184,10 +4300,11 @@ public class ComboBoxEx extends Composite
             case OS.WM_SETTEXT:
                 end[0] = OS.GetWindowTextLength(hwndText);
                 int length = OS.IsUnicode ? OS.wcslen(lParam) : OS.strlen(lParam);
-                TCHAR buffer = new TCHAR(getCodePage(), length);
-                int byteCount = buffer.length() * TCHAR.sizeof;
-                OS.MoveMemory(buffer, lParam, byteCount);
+                ComboTextBuffer textBuffer = getTextBuffer();
+                TCHAR buffer = textBuffer.acquire(getCodePage(), length);
+                OS.MoveMemory(buffer, lParam, length * TCHAR.sizeof);
                 newText = buffer.toString(0, length);
+                textBuffer.release(buffer);
                 break;
         }
         if (newText != null)
@@ -3202,13 +4319,17 @@ public class ComboBoxEx extends Composite
                 {
                     OS.CallWindowProc(EditProc, hwndText, msg, wParam, lParam);
                 }
-                TCHAR buffer = new TCHAR(getCodePage(), newText, true);
+                ComboTextBuffer textBuffer = getTextBuffer();
+                TCHAR buffer = textBuffer.acquire(getCodePage(), newText);
                 if (msg == OS.WM_SETTEXT)
                 {
+                    /* The scratch buffer may be longer than the text */
+                    int count = OS.IsUnicode ? newText.length() + 1 : buffer.length();
                     int /* long */hHeap = OS.GetProcessHeap();
-                    int byteCount = buffer.length() * TCHAR.sizeof;
+                    int byteCount = count * TCHAR.sizeof;
                     int /* long */pszText = OS.HeapAlloc(hHeap, OS.HEAP_ZERO_MEMORY, byteCount);
                     OS.MoveMemory(pszText, buffer, byteCount);
+                    textBuffer.release(buffer);
                     int /* long */code =
                         OS.CallWindowProc(EditProc, hwndText, msg, wParam, pszText);
                     OS.HeapFree(hHeap, 0, pszText);
@@ -3217,6 +4338,7 @@ public class ComboBoxEx extends Composite
                 else
                 {
                     OS.SendMessage(hwndText, OS.EM_REPLACESEL, 0, buffer);
+                    textBuffer.release(buffer);
                     return LRESULT.ZERO;
                 }
             }
@@ -3249,6 +4371,16 @@ public class ComboBoxEx extends Composite
                 if (isDisposed())
                     return LRESULT.ZERO;
                 noSelection = false;
+                /* Filter on the typed text, not on the completed one */
+                String typed = filter != null ? getText() : null;
+                if (autoComplete && (style & SWT.READ_ONLY) == 0)
+                {
+                    autoComplete();
+                    if (isDisposed())
+                        return LRESULT.ZERO;
+                }
+                if (filter != null && typed != null)
+                    filter.filter(typed);
                 break;
             case OS.CBN_SELCHANGE:
                 /*
@@ -3264,6 +4396,8 @@ public class ComboBoxEx extends Composite
                 if (index != OS.CB_ERR)
                 {
                     OS.SendMessage(handle, OS.CB_SETCURSEL, index, 0);
+                    if (index < core.model.getCount())
+                        core.usageStats.record(core.model.getItem(index));
                 }
                 /*
                  * It is possible (but unlikely), that application code could
@@ -3343,6 +4477,8 @@ public class ComboBoxEx extends Composite
      */
     LRESULT wmKeyDown(int /* long */hwnd, int /* long */wParam, int /* long */lParam)
     {
+        /* Text removed by the user is not completed again */
+        ignoreAutoComplete = wParam == OS.VK_BACK || wParam == OS.VK_DELETE;
         if (ignoreCharacter)
             return null;
         LRESULT result = super.wmKeyDown(hwnd, wParam, lParam);
@@ -3362,6 +4498,62 @@ public class ComboBoxEx extends Composite
         return result;
     }
 
+    /**
+     * Answers <code>CBEN_GETDISPINFO</code> for the items of a virtual
+     * receiver. The text and image of an item are only requested when the
+     * control needs to draw it.
+     * 
+     * @param hdr notification header
+     * @param wParam WPARAM
+     * @param lParam LPARAM, pointer to NMCOMBOBOXEX
+     */
+    LRESULT wmNotifyChild(NMHDR hdr, int /* long */wParam, int /* long */lParam)
+    {
+        switch (hdr.code)
+        {
+            case CBEN_GETDISPINFOA:
+            case CBEN_GETDISPINFOW:
+            {
+                if ((style & SWT.VIRTUAL) == 0)
+                {
+                    break;
+                }
+
+                int /* long */address = lParam + NMHDR.sizeof;
+                int[] fields = ComboBoxExItem.read(address);
+                int index = fields[ComboBoxExItem.ITEM];
+
+                ComboModel model = core.model;
+                if (!(0 <= index && index < model.getCount()))
+                {
+                    break;
+                }
+
+                int mask = fields[ComboBoxExItem.MASK];
+
+                if ((mask & CBEIF_TEXT) != 0)
+                {
+                    String string = model.getItem(index);
+                    if (isDisposed())
+                        return LRESULT.ZERO;
+                    ComboBoxExItem.writeText(fields, string, getCodePage(), getTextBuffer());
+                }
+
+                if ((mask & (CBEIF_IMAGE | CBEIF_SELECTEDIMAGE)) != 0)
+                {
+                    int image = model.getImage(index);
+                    if (isDisposed())
+                        return LRESULT.ZERO;
+                    ComboBoxExItem.writeImage(address, fields, image);
+                }
+
+                return LRESULT.ZERO;
+            }
+        }
+
+        return super.wmNotifyChild(hdr, wParam, lParam);
+    }
+
     /**
      * TODO CLEAN/COMMENT
      */
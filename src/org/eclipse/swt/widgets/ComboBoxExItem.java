@@ -0,0 +1,228 @@
+package org.eclipse.swt.widgets;
+
+import org.eclipse.swt.internal.win32.OS;
+import org.eclipse.swt.internal.win32.TCHAR;
+
+/**
+ * Native <code>COMBOBOXEXITEM</code> structure kept in process heap memory.
+ * <p>
+ * The structure is written with <code>OS.MoveMemory</code> and passed to
+ * <code>SendMessage</code> as a pointer, which avoids building a JNA
+ * structure for every message. The structure and its text buffer are
+ * reused for every insertion, the text buffer only grows.
+ * </p>
+ */
+class ComboBoxExItem
+{
+
+    /* Field indices of COMBOBOXEXITEM */
+    static final int MASK = 0;
+    static final int ITEM = 1;
+    static final int TEXT = 2;
+    static final int TEXT_MAX = 3;
+    static final int IMAGE = 4;
+    static final int SELECTED_IMAGE = 5;
+    static final int OVERLAY = 6;
+    static final int INDENT = 7;
+    static final int PARAM = 8;
+
+    static final int FIELD_COUNT = 9;
+    static final int sizeof = FIELD_COUNT * 4;
+
+    static final int LPSTR_TEXTCALLBACK = -1;
+    static final int I_IMAGECALLBACK = -1;
+
+    int /*long*/ hHeap;
+    int /*long*/ address;
+    int[] fields = new int[FIELD_COUNT];
+
+    int codePage;
+    int /*long*/ textAddress;
+    int textCapacity;
+    TCHAR buffer;
+
+    /**
+     * Allocates the native structure. It must be released with
+     * <code>dispose()</code>.
+     *
+     * @param codePage the code page used for item texts
+     */
+    ComboBoxExItem(int codePage)
+    {
+        this.codePage = codePage;
+
+        hHeap = OS.GetProcessHeap();
+        address = OS.HeapAlloc(hHeap, OS.HEAP_ZERO_MEMORY, sizeof);
+    }
+
+    /**
+     * Inserts an item with the given text and image.
+     *
+     * @param hwnd the ComboBoxEx handle
+     * @param index the index of the item, -1 to append
+     * @param string the text of the item
+     * @param image the image index of the item, -1 for no image
+     * @return the index of the new item or -1
+     */
+    int insert(int /*long*/ hwnd, int index, String string, int image)
+    {
+        int length = setText(string);
+
+        fields[MASK] = ComboBoxEx.CBEIF_TEXT | ComboBoxEx.CBEIF_INDENT;
+        if (image != -1)
+        {
+            fields[MASK] |= ComboBoxEx.CBEIF_IMAGE | ComboBoxEx.CBEIF_SELECTEDIMAGE;
+        }
+        fields[ITEM] = index;
+        fields[TEXT] = textAddress;
+        fields[TEXT_MAX] = length;
+        fields[IMAGE] = image;
+        fields[SELECTED_IMAGE] = image;
+
+        OS.MoveMemory(address, fields, sizeof);
+
+        int msg = OS.IsUnicode ? ComboBoxEx.CBEM_INSERTITEM : ComboBoxEx.CBEM_INSERTITEMA;
+        return (int)/*64*/ OS.SendMessage(hwnd, msg, 0, address);
+    }
+
+    /**
+     * Copies the text into the native text buffer, growing it if necessary.
+     *
+     * @param string the text
+     * @return the length of the text in characters
+     */
+    int setText(String string)
+    {
+        int length = string.length();
+
+        if (OS.IsUnicode)
+        {
+            if (buffer == null || buffer.length() < length + 1)
+            {
+                buffer = new TCHAR(codePage, Math.max(length + 1, 64));
+            }
+
+            string.getChars(0, length, buffer.chars, 0);
+            buffer.chars[length] = 0;
+        }
+        else
+        {
+            buffer = new TCHAR(codePage, string, true);
+            length = buffer.length() - 1;
+        }
+
+        int byteCount = (length + 1) * TCHAR.sizeof;
+        if (byteCount > textCapacity)
+        {
+            if (textAddress != 0)
+            {
+                OS.HeapFree(hHeap, 0, textAddress);
+            }
+
+            textCapacity = Math.max(byteCount, textCapacity * 2);
+            textAddress = OS.HeapAlloc(hHeap, OS.HEAP_ZERO_MEMORY, textCapacity);
+        }
+
+        OS.MoveMemory(textAddress, buffer, byteCount);
+        return length;
+    }
+
+    /**
+     * Inserts an item whose text and image are requested with
+     * <code>CBEN_GETDISPINFO</code> when the control needs them.
+     *
+     * @param hwnd the ComboBoxEx handle
+     * @param index the index of the item, -1 to append
+     * @return the index of the new item or -1
+     */
+    int insertCallback(int /*long*/ hwnd, int index)
+    {
+        fields[MASK] = ComboBoxEx.CBEIF_TEXT | ComboBoxEx.CBEIF_IMAGE | ComboBoxEx.CBEIF_SELECTEDIMAGE;
+        fields[ITEM] = index;
+        fields[TEXT] = LPSTR_TEXTCALLBACK;
+        fields[TEXT_MAX] = 0;
+        fields[IMAGE] = I_IMAGECALLBACK;
+        fields[SELECTED_IMAGE] = I_IMAGECALLBACK;
+
+        OS.MoveMemory(address, fields, sizeof);
+
+        int msg = OS.IsUnicode ? ComboBoxEx.CBEM_INSERTITEM : ComboBoxEx.CBEM_INSERTITEMA;
+        return (int)/*64*/ OS.SendMessage(hwnd, msg, 0, address);
+    }
+
+    /**
+     * Frees the native structure.
+     */
+    void dispose()
+    {
+        if (address != 0)
+        {
+            OS.HeapFree(hHeap, 0, address);
+        }
+
+        if (textAddress != 0)
+        {
+            OS.HeapFree(hHeap, 0, textAddress);
+        }
+
+        address = textAddress = 0;
+        textCapacity = 0;
+        buffer = null;
+    }
+
+    /**
+     * Reads the fields of a structure owned by the control.
+     *
+     * @param address the address of the structure
+     * @return the fields of the structure
+     */
+    static int[] read(int /*long*/ address)
+    {
+        int[] fields = new int[FIELD_COUNT];
+        OS.MoveMemory(fields, address, sizeof);
+        return fields;
+    }
+
+    /**
+     * Copies text into the buffer of a structure owned by the control,
+     * truncating it to the size of the buffer.
+     *
+     * @param fields the fields of the structure
+     * @param string the text
+     * @param codePage the code page of the text
+     * @param textBuffer the scratch buffer of the widget
+     */
+    static void writeText(int[] fields, String string, int codePage, ComboTextBuffer textBuffer)
+    {
+        int max = fields[TEXT_MAX];
+        if (fields[TEXT] == 0 || max <= 0)
+        {
+            return;
+        }
+
+        if (string.length() >= max)
+        {
+            string = string.substring(0, max - 1);
+        }
+
+        TCHAR buffer = textBuffer.acquire(codePage, string);
+        int count = OS.IsUnicode ? string.length() + 1 : buffer.length();
+        OS.MoveMemory(fields[TEXT], buffer, Math.min(count, max) * TCHAR.sizeof);
+        textBuffer.release(buffer);
+    }
+
+    /**
+     * Stores the image index into a structure owned by the control.
+     *
+     * @param address the address of the structure
+     * @param fields the fields of the structure
+     * @param image the image index
+     */
+    static void writeImage(int /*long*/ address, int[] fields, int image)
+    {
+        fields[IMAGE] = image;
+        fields[SELECTED_IMAGE] = image;
+        OS.MoveMemory(address + IMAGE * 4, new int[] {image, image}, 8);
+    }
+
+}
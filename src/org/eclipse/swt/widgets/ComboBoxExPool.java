@@ -0,0 +1,345 @@
+package org.eclipse.swt.widgets;
+
+import java.util.ArrayList;
+
+import org.eclipse.swt.SWT;
+
+/**
+ * A pool of <code>ComboBoxEx</code> instances that are reused instead of
+ * being created and disposed, for example as cell editors.
+ * <p>
+ * A released combo is cleared, hidden and moved to a hidden shell owned by
+ * the pool. Its <code>SWT.Dispose</code> listeners are notified on release,
+ * since the caller is done with it, and all listeners are then removed.
+ * <code>acquire()</code> hands out a parked combo of the requested
+ * style by moving it to the new parent, which avoids creating the native
+ * control, installing its hooks and subclassing its children again. Only
+ * when no combo of that style is parked is a new one created.
+ * </p>
+ * <p>
+ * At most <code>getMaxSize()</code> combos are parked; releasing another one
+ * disposes the combo that was parked the longest. Combos that were parked
+ * for longer than <code>getMaxIdleTime()</code> are disposed on the next call
+ * of <code>acquire()</code> or <code>release()</code>. Hits, misses and
+ * evictions are counted.
+ * </p>
+ * <p>
+ * The pool must be used from the user interface thread of its display.
+ * </p>
+ */
+public class ComboBoxExPool
+{
+
+    /* The style bits that must match for a parked combo to be reused */
+    static final int STYLE_MASK = SWT.DROP_DOWN | SWT.SIMPLE | SWT.READ_ONLY | SWT.VIRTUAL | SWT.FLAT
+        | SWT.RIGHT_TO_LEFT;
+
+    Display display;
+    Shell parking;
+
+    /* The parked combos and the times they were parked, oldest first */
+    ArrayList parked = new ArrayList();
+    long[] parkedTimes = new long[4];
+
+    int maxSize;
+    int maxIdleTime;
+
+    long hits, misses, evictions;
+
+    /**
+     * Constructs a pool that parks up to 16 combos without an idle limit.
+     *
+     * @param display the display of the combos
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the display is null</li>
+     *                </ul>
+     */
+    public ComboBoxExPool(Display display)
+    {
+        this(display, 16);
+    }
+
+    /**
+     * Constructs a pool that parks up to the given number of combos without
+     * an idle limit.
+     *
+     * @param display the display of the combos
+     * @param maxSize the maximum number of parked combos
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the display is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the size is negative</li>
+     *                </ul>
+     */
+    public ComboBoxExPool(Display display, int maxSize)
+    {
+        if (display == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (maxSize < 0)
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        this.display = display;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a combo with the given parent and style, reusing a parked
+     * combo of the same style if there is one.
+     *
+     * @param parent the parent of the combo
+     * @param style the style of the combo
+     * @return the combo
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the parent is null</li>
+     *                </ul>
+     *
+     * @see ComboBoxEx#ComboBoxEx(Composite, int)
+     */
+    public ComboBoxEx acquire(Composite parent, int style)
+    {
+        if (parent == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        evictIdle();
+
+        int key = ComboBoxEx.checkStyle(style) & STYLE_MASK;
+        for (int i = parked.size() - 1; i >= 0; i--)
+        {
+            ComboBoxEx combo = (ComboBoxEx) parked.get(i);
+            if (combo.isDisposed())
+            {
+                unpark(i);
+                continue;
+            }
+            if ((combo.getStyle() & STYLE_MASK) != key)
+                continue;
+            unpark(i);
+            if (combo.setParent(parent))
+            {
+                hits++;
+                combo.setVisible(true);
+                return combo;
+            }
+            combo.dispose();
+            break;
+        }
+
+        misses++;
+        return new ComboBoxEx(parent, style);
+    }
+
+    /**
+     * Clears the given combo and parks it for reuse. A combo that is
+     * disposed is ignored; one that the pool has no room for is disposed.
+     *
+     * @param combo the combo
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the combo is null</li>
+     *                </ul>
+     */
+    public void release(ComboBoxEx combo)
+    {
+        if (combo == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (combo.isDisposed() || parked.contains(combo))
+            return;
+        evictIdle();
+
+        if (maxSize == 0)
+        {
+            combo.dispose();
+            return;
+        }
+
+        combo.recycle();
+        combo.setVisible(false);
+        if (combo.isDisposed() || !combo.setParent(getParking()))
+        {
+            if (!combo.isDisposed())
+                combo.dispose();
+            return;
+        }
+
+        while (parked.size() >= maxSize)
+        {
+            evict(0);
+        }
+        int size = parked.size();
+        if (size == parkedTimes.length)
+        {
+            long[] newTimes = new long[size * 2];
+            System.arraycopy(parkedTimes, 0, newTimes, 0, size);
+            parkedTimes = newTimes;
+        }
+        parked.add(combo);
+        parkedTimes[size] = System.currentTimeMillis();
+    }
+
+    Shell getParking()
+    {
+        if (parking == null || parking.isDisposed())
+            parking = new Shell(display);
+        return parking;
+    }
+
+    void unpark(int index)
+    {
+        parked.remove(index);
+        System.arraycopy(parkedTimes, index + 1, parkedTimes, index, parked.size() - index);
+    }
+
+    void evict(int index)
+    {
+        ComboBoxEx combo = (ComboBoxEx) parked.get(index);
+        unpark(index);
+        if (!combo.isDisposed())
+        {
+            combo.dispose();
+            evictions++;
+        }
+    }
+
+    /**
+     * Disposes the combos that were parked for longer than the idle limit.
+     */
+    void evictIdle()
+    {
+        if (maxIdleTime == 0)
+            return;
+        long limit = System.currentTimeMillis() - maxIdleTime;
+        while (!parked.isEmpty() && parkedTimes[0] < limit)
+        {
+            evict(0);
+        }
+    }
+
+    /**
+     * Returns the maximum number of parked combos.
+     *
+     * @return the maximum size
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of parked combos. Combos above the new limit
+     * are disposed, the longest parked first.
+     *
+     * @param maxSize the new maximum size
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_ARGUMENT - if the size is negative</li>
+     *                </ul>
+     */
+    public void setMaxSize(int maxSize)
+    {
+        if (maxSize < 0)
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        this.maxSize = maxSize;
+        while (parked.size() > maxSize)
+        {
+            evict(0);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds after which a parked combo is
+     * disposed, 0 if parked combos are kept.
+     *
+     * @return the maximum idle time
+     */
+    public int getMaxIdleTime()
+    {
+        return maxIdleTime;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a parked combo is disposed.
+     * The default is 0, which keeps parked combos until the pool is full.
+     *
+     * @param maxIdleTime the new maximum idle time
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_ARGUMENT - if the time is negative</li>
+     *                </ul>
+     */
+    public void setMaxIdleTime(int maxIdleTime)
+    {
+        if (maxIdleTime < 0)
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        this.maxIdleTime = maxIdleTime;
+        evictIdle();
+    }
+
+    /**
+     * Returns the number of parked combos.
+     *
+     * @return the number of parked combos
+     */
+    public int getSize()
+    {
+        return parked.size();
+    }
+
+    /**
+     * Returns the number of calls of <code>acquire()</code> that reused a
+     * parked combo.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of calls of <code>acquire()</code> that created a
+     * new combo.
+     *
+     * @return the number of misses
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the number of parked combos that were disposed because the
+     * pool was full or they were idle too long.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters to zero.
+     */
+    public void resetCounters()
+    {
+        hits = misses = evictions = 0;
+    }
+
+    /**
+     * Disposes the parked combos and the shell that holds them.
+     */
+    public void dispose()
+    {
+        while (!parked.isEmpty())
+        {
+            ComboBoxEx combo = (ComboBoxEx) parked.get(0);
+            unpark(0);
+            if (!combo.isDisposed())
+                combo.dispose();
+        }
+        if (parking != null && !parking.isDisposed())
+            parking.dispose();
+        parking = null;
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.eclipse.swt.widgets;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.internal.Callback;
+import org.eclipse.swt.internal.win32.OS;
+import org.eclipse.swt.internal.win32.TCHAR;
+
+/**
+ * The CBT hook that clears the ES_NOHIDESEL style bit of the edit control
+ * created by a <code>ComboBoxEx</code>.
+ * <p>
+ * One hook is shared by all combos of a display and kept in the display's
+ * data. It is installed while at least one reference is held and removed
+ * when the last one is released, so combos created between
+ * <code>ComboBoxEx.beginCreate()</code> and <code>endCreate()</code> share a
+ * single installation. The <code>Callback</code> is created once and
+ * disposed with the display.
+ * </p>
+ * <p>
+ * Edit controls are only changed while a combo is creating its handle, other
+ * windows created while the hook is installed are left alone. The class name
+ * is read into a buffer that is reused and compared character by character,
+ * so the hook allocates nothing per window.
+ * </p>
+ */
+class ComboCBTHook
+{
+
+    static final String KEY = "org.eclipse.swt.widgets.ComboCBTHook";
+
+    Callback callback;
+    int /*long*/ hook;
+    int references;
+
+    /* Set while a combo is creating its handle */
+    int creating;
+
+    TCHAR className = new TCHAR(0, 8);
+
+    /**
+     * Returns the hook of the given display and takes a reference on it,
+     * installing the hook if it is not installed.
+     *
+     * @param display the display
+     * @return the hook
+     */
+    static ComboCBTHook acquire(Display display)
+    {
+        ComboCBTHook cbtHook = (ComboCBTHook) display.getData(KEY);
+
+        if (cbtHook == null)
+        {
+            final ComboCBTHook newHook = new ComboCBTHook();
+            newHook.callback = new Callback(newHook, "CBTProc", 3);
+            if (newHook.callback.getAddress() == 0)
+            {
+                newHook.callback.dispose();
+                SWT.error(SWT.ERROR_NO_MORE_CALLBACKS);
+            }
+            display.setData(KEY, newHook);
+            display.disposeExec(new Runnable()
+            {
+                public void run()
+                {
+                    newHook.dispose();
+                }
+            });
+            cbtHook = newHook;
+        }
+
+        if (cbtHook.references++ == 0)
+        {
+            cbtHook.hook = OS.SetWindowsHookEx(OS.WH_CBT, cbtHook.callback.getAddress(), 0, OS.GetCurrentThreadId());
+        }
+
+        return cbtHook;
+    }
+
+    /**
+     * Releases a reference and removes the hook when it was the last one.
+     */
+    void release()
+    {
+        if (references == 0 || --references > 0)
+        {
+            return;
+        }
+
+        if (hook != 0)
+        {
+            OS.UnhookWindowsHookEx(hook);
+        }
+
+        hook = 0;
+    }
+
+    void dispose()
+    {
+        references = 1;
+        release();
+        callback.dispose();
+    }
+
+    int /*long*/ CBTProc(int /*long*/ nCode, int /*long*/ wParam, int /*long*/ lParam)
+    {
+        if (creating > 0 && (int)/*64*/ nCode == OS.HCBT_CREATEWND && isEdit(wParam))
+        {
+            int bits = OS.GetWindowLong(wParam, OS.GWL_STYLE);
+            OS.SetWindowLong(wParam, OS.GWL_STYLE, bits & ~OS.ES_NOHIDESEL);
+        }
+
+        return OS.CallNextHookEx(hook, (int)/*64*/ nCode, wParam, lParam);
+    }
+
+    /**
+     * Returns whether the window is of the class "Edit", ignoring case.
+     */
+    boolean isEdit(int /*long*/ hwnd)
+    {
+        int length = OS.GetClassName(hwnd, className, className.length());
+
+        if (length != 4)
+        {
+            return false;
+        }
+
+        return (className.tcharAt(0) | 0x20) == 'e' && (className.tcharAt(1) | 0x20) == 'd'
+            && (className.tcharAt(2) | 0x20) == 'i' && (className.tcharAt(3) | 0x20) == 't';
+    }
+
+}
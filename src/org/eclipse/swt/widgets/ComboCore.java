@@ -0,0 +1,1215 @@
+package org.eclipse.swt.widgets;
+
+import org.eclipse.swt.SWT;
+
+/**
+ * Item logic of a <code>ComboBoxEx</code>.
+ * <p>
+ * The core owns the item model, the image registry, the width cache and
+ * tracker and the state of <code>beginUpdate()</code>/<code>endUpdate()</code>.
+ * It reaches the native control only through a <code>ComboBackend</code> and
+ * the widget only through a <code>Host</code>, so it has no dependency on the
+ * Win32 layer and can run against <code>ComboSimulatedBackend</code>.
+ * </p>
+ * <p>
+ * Argument checking is done here, thread and disposal checks are left to the
+ * widget.
+ * </p>
+ */
+class ComboCore
+{
+
+    /**
+     * Widget side of the core.
+     */
+    interface Host
+    {
+
+        /**
+         * Sends an event of the given type to the listeners of the widget.
+         *
+         * @param eventType the event type
+         */
+        void sendEvent(int eventType);
+
+        /**
+         * Returns whether the widget has been disposed.
+         *
+         * @return <code>true</code> if the widget is disposed
+         */
+        boolean isDisposed();
+
+        /**
+         * Requests the contents of an item of a virtual widget. The host
+         * answers with <code>setVirtualItem()</code>.
+         *
+         * @param index the index of the item
+         */
+        void setData(int index);
+
+    }
+
+    ComboBackend backend;
+    Host host;
+    int style;
+
+    /* Java-side mirror of the native items, answers all read APIs */
+    ComboModel model;
+
+    /* Image list indices shared by all items using the same image */
+    ComboImageRegistry imageRegistry = new ComboImageRegistry();
+
+    /* Item widths by font and text, filled while measuring */
+    ComboTextWidthCache widthCache = new ComboTextWidthCache();
+    int /*long*/ measureFont;
+
+    /* Widths of the items in the current font, for the widest item */
+    ComboWidthTracker widthTracker = new ComboWidthTracker();
+
+    int scrollWidth;
+
+    /* Uses of item texts, for ranking suggestions */
+    ComboUsageStats usageStats = new ComboUsageStats();
+
+    /* State of beginUpdate()/endUpdate() */
+    int updateCount;
+    boolean updateRedraw, updateModify, updateSelection, updateScrollWidth;
+    Object[] updateImages;
+
+    /**
+     * Creates the core of a widget.
+     *
+     * @param backend the native side
+     * @param host the widget side
+     * @param style the style of the widget
+     */
+    ComboCore(ComboBackend backend, Host host, int style)
+    {
+        this.backend = backend;
+        this.host = host;
+        this.style = style;
+
+        if ((style & SWT.VIRTUAL) != 0)
+        {
+            model = new ComboVirtualModel(new ComboVirtualModel.Provider()
+            {
+                public void resolve(ComboVirtualModel virtualModel, int index)
+                {
+                    ComboCore.this.host.setData(index);
+                }
+            });
+        }
+        else
+        {
+            model = new ComboModel();
+        }
+    }
+
+    /**
+     * Adds an item at the given index.
+     *
+     * @param string the text of the item
+     * @param image the image of the item or <code>null</code>
+     * @param index the index of the item, -1 to append
+     */
+    void add(String string, Object image, int index)
+    {
+        if (string == null)
+        {
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        }
+
+        int count = model.getCount();
+
+        if (!(-1 <= index && index <= count))
+        {
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        }
+
+        int imageIndex = addImage(image);
+
+        if (insertItem(index, string, imageIndex) == ComboBackend.ERROR)
+        {
+            releaseImage(imageIndex);
+            SWT.error(SWT.ERROR_ITEM_NOT_ADDED);
+        }
+
+        model.add(string, imageIndex, index == -1 ? count : index);
+
+        if ((style & SWT.VIRTUAL) == 0)
+        {
+            beginMeasure();
+            int width = measureItem(string);
+            if (widthTracker.isValid(measureFont))
+            {
+                widthTracker.add(width);
+            }
+            endMeasure();
+
+            if ((style & SWT.H_SCROLL) != 0)
+            {
+                setScrollWidth(width, true);
+            }
+        }
+    }
+
+    /**
+     * Inserts an item into the native control. Items of a virtual widget are
+     * inserted with callback text and image.
+     *
+     * @param index the index of the item, -1 to append
+     * @param string the text of the item
+     * @param image the image index of the item, -1 for no image
+     * @return the index of the new item or <code>ComboBackend.ERROR</code>
+     */
+    int insertItem(int index, String string, int image)
+    {
+        if ((style & SWT.VIRTUAL) != 0)
+        {
+            return backend.insertCallbackItem(index);
+        }
+
+        return backend.insertItem(index, string, image);
+    }
+
+    /**
+     * Returns the image list index of an image.
+     * <p>
+     * An image that is already used by another item reuses its index and
+     * only has its reference count incremented. New images are pushed to the
+     * backend right away, or at the end of the current update.
+     * </p>
+     *
+     * @param image the image
+     * @return the image list index, -1 if the image is null
+     */
+    int addImage(Object image)
+    {
+        if (image == null)
+        {
+            return -1;
+        }
+
+        int index = imageRegistry.acquire(image);
+
+        if (imageRegistry.getReferences(index) > 1)
+        {
+            return index;
+        }
+
+        if (updateCount > 0)
+        {
+            if (updateImages == null || updateImages.length <= index)
+            {
+                Object[] newImages = new Object[Math.max(index + 1, imageRegistry.getSize() * 2)];
+                if (updateImages != null)
+                {
+                    System.arraycopy(updateImages, 0, newImages, 0, updateImages.length);
+                }
+                updateImages = newImages;
+            }
+
+            updateImages[index] = image;
+            return index;
+        }
+
+        backend.setImage(index, image);
+        return index;
+    }
+
+    /**
+     * Releases an image index acquired for an item that could not be
+     * inserted. An image that is no longer used is not pushed to the backend
+     * at the end of the current update.
+     *
+     * @param index the image list index, -1 is ignored
+     */
+    void releaseImage(int index)
+    {
+        if (imageRegistry.release(index) && updateImages != null && index < updateImages.length)
+        {
+            updateImages[index] = null;
+        }
+    }
+
+    /**
+     * Releases the images of the items between the given indices (inclusive)
+     * before they are removed or cleared.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     */
+    void releaseImages(int start, int end)
+    {
+        if (imageRegistry.getSize() == 0)
+        {
+            return;
+        }
+
+        for (int i = start; i <= end; i++)
+        {
+            imageRegistry.release(model.images[i]);
+        }
+    }
+
+    /**
+     * Forgets all images and releases the image list of the backend.
+     */
+    void releaseImageList()
+    {
+        imageRegistry.clear();
+        updateImages = null;
+        backend.releaseImages();
+    }
+
+    /**
+     * Releases all resources when the widget is disposed.
+     */
+    void release()
+    {
+        releaseImageList();
+        backend.dispose();
+    }
+
+    /**
+     * Starts a batch of changes.
+     */
+    void beginUpdate()
+    {
+        if (updateCount++ == 0)
+        {
+            updateRedraw = backend.suspendRedraw();
+        }
+    }
+
+    /**
+     * Ends a batch of changes. The outermost call pushes the new images,
+     * recomputes the drop-down width, resumes redrawing and sends the held
+     * events.
+     */
+    void endUpdate()
+    {
+        if (updateCount == 0 || --updateCount > 0)
+        {
+            return;
+        }
+
+        if (updateImages != null)
+        {
+            int size = Math.min(updateImages.length, imageRegistry.getSize());
+            for (int i = 0; i < size; i++)
+            {
+                if (updateImages[i] != null)
+                {
+                    backend.setImage(i, updateImages[i]);
+                }
+            }
+            updateImages = null;
+        }
+
+        if (updateScrollWidth)
+        {
+            updateScrollWidth = false;
+            setScrollWidth();
+        }
+
+        if (updateRedraw)
+        {
+            updateRedraw = false;
+            backend.resumeRedraw();
+        }
+
+        boolean modify = updateModify, selection = updateSelection;
+        updateModify = updateSelection = false;
+
+        if (modify)
+        {
+            host.sendEvent(SWT.Modify);
+            if (host.isDisposed())
+                return;
+        }
+
+        if (selection)
+        {
+            host.sendEvent(SWT.Selection);
+        }
+    }
+
+    /**
+     * Records a Modify or Selection event instead of sending it while an
+     * update is in progress.
+     *
+     * @param eventType the event type
+     * @return <code>true</code> if the event is held
+     */
+    boolean holdEvent(int eventType)
+    {
+        if (updateCount > 0)
+        {
+            if (eventType == SWT.Modify)
+            {
+                updateModify = true;
+                return true;
+            }
+
+            if (eventType == SWT.Selection)
+            {
+                updateSelection = true;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sends an event to the host unless it is held.
+     *
+     * @param eventType the event type
+     */
+    void sendEvent(int eventType)
+    {
+        if (!holdEvent(eventType))
+        {
+            host.sendEvent(eventType);
+        }
+    }
+
+    /**
+     * Clears the item at the given index of a virtual widget.
+     *
+     * @param index the index of the item
+     */
+    void clear(int index)
+    {
+        if (!(0 <= index && index < model.getCount()))
+        {
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        }
+
+        if ((style & SWT.VIRTUAL) == 0)
+        {
+            return;
+        }
+
+        releaseImages(index, index);
+        ((ComboVirtualModel) model).clear(index);
+        backend.redrawList();
+    }
+
+    /**
+     * Clears all items of a virtual widget.
+     */
+    void clearAll()
+    {
+        if ((style & SWT.VIRTUAL) == 0)
+        {
+            return;
+        }
+
+        releaseImages(0, model.getCount() - 1);
+        ((ComboVirtualModel) model).clearAll();
+        backend.redrawList();
+    }
+
+    /**
+     * Prepares measuring item widths with the current font.
+     */
+    void beginMeasure()
+    {
+        measureFont = backend.getFont();
+    }
+
+    /**
+     * Returns the width of an item in the current font, measuring it only if
+     * it is not in the width cache. Must be called between
+     * <code>beginMeasure()</code> and <code>endMeasure()</code>.
+     *
+     * @param string the text of the item
+     * @return the width of the item
+     */
+    int measureItem(String string)
+    {
+        int width = widthCache.get(measureFont, string);
+
+        if (width == -1)
+        {
+            width = backend.measureText(string);
+            widthCache.put(measureFont, string, width);
+        }
+
+        return width;
+    }
+
+    /**
+     * Releases the resources acquired while measuring.
+     */
+    void endMeasure()
+    {
+        backend.endMeasure();
+    }
+
+    /**
+     * Returns the width of the widest item in the current font. The item
+     * widths are only measured again when the font has changed since they
+     * were last tracked.
+     *
+     * @return the width of the widest item
+     */
+    int getMaxItemWidth()
+    {
+        int /*long*/ font = backend.getFont();
+
+        if (!widthTracker.isValid(font))
+        {
+            widthTracker.reset(font);
+
+            int count = (style & SWT.VIRTUAL) != 0 ? 0 : model.getCount();
+            beginMeasure();
+            for (int i = 0; i < count; i++)
+            {
+                widthTracker.add(measureItem(model.getItem(i)));
+            }
+            endMeasure();
+        }
+
+        return widthTracker.getMax();
+    }
+
+    /**
+     * Removes the width of an item from the width tracker. Must be called
+     * between <code>beginMeasure()</code> and <code>endMeasure()</code>.
+     *
+     * @param string the text of the item
+     * @return the width of the item
+     */
+    int untrackItem(String string)
+    {
+        int width = measureItem(string);
+
+        if (widthTracker.isValid(measureFont))
+        {
+            widthTracker.remove(width);
+        }
+
+        return width;
+    }
+
+    /**
+     * Forgets the widths measured with the current font before the font of
+     * the widget changes. The handle of the old font may be reused once it
+     * is disposed.
+     */
+    void fontChanging()
+    {
+        widthCache.clear(backend.getFont());
+        widthTracker.invalidate();
+    }
+
+    /**
+     * Deselects the item at the given index if it is selected.
+     *
+     * @param index the index of the item
+     */
+    void deselect(int index)
+    {
+        int selection = backend.getSelection();
+        if (index != selection)
+        {
+            return;
+        }
+
+        backend.setSelection(-1);
+        sendEvent(SWT.Modify);
+    }
+
+    /**
+     * Deselects all items.
+     */
+    void deselectAll()
+    {
+        backend.setSelection(-1);
+        sendEvent(SWT.Modify);
+    }
+
+    /**
+     * Returns the item at the given index.
+     *
+     * @param index the index of the item
+     * @return the item
+     */
+    String getItem(int index)
+    {
+        if (!(0 <= index && index < model.getCount()))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        return model.getItem(index);
+    }
+
+    /**
+     * Copies the texts of a range of items into the array.
+     *
+     * @param start the index of the first item
+     * @param count the number of items
+     * @param dest the array
+     */
+    void getItems(int start, int count, String[] dest)
+    {
+        if (dest == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (count < 0 || !(0 <= start && start <= model.getCount() - count))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        if (dest.length < count)
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        model.getItems(start, count, dest);
+    }
+
+    /**
+     * Passes a range of items to the visitor in order. Visiting stops early
+     * when the visitor returns <code>false</code>, when the host is disposed
+     * or when the range no longer exists because the visitor removed items.
+     *
+     * @param start the index of the first item
+     * @param count the number of items
+     * @param visitor the visitor
+     * @return the number of items visited
+     */
+    int visitItems(int start, int count, ComboItemVisitor visitor)
+    {
+        if (visitor == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (count < 0 || !(0 <= start && start <= model.getCount() - count))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        int end = start + count;
+        for (int i = start; i < end; i++)
+        {
+            if (i >= model.getCount())
+                return i - start;
+            boolean more = visitor.visit(i, model.getItem(i));
+            if (!more || host.isDisposed())
+                return i - start + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of characters of the item at the given index.
+     *
+     * @param index the index of the item
+     * @return the length of the item
+     */
+    int getItemLength(int index)
+    {
+        return getItem(index).length();
+    }
+
+    /**
+     * Searches the items starting at the given index for an item that is
+     * equal to the argument.
+     *
+     * @param string the search item
+     * @param start the zero-relative index at which to begin the search
+     * @return the index of the item or -1
+     */
+    int indexOf(String string, int start)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+
+        /*
+         * CB_FINDSTRINGEXACT is case insensitive and does not find empty
+         * strings, so every hit had to be verified with getItem(). Searching
+         * the Java-side items avoids the native round trips entirely.
+         */
+        if (!(0 <= start && start < model.getCount()))
+            return -1;
+        return model.indexOf(string, start);
+    }
+
+    /**
+     * Searches the items starting at the given index for an item that starts
+     * with the prefix.
+     *
+     * @param prefix the prefix
+     * @param start the zero-relative index at which to begin the search
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the index of the item or -1
+     */
+    int findPrefix(String prefix, int start, boolean ignoreCase)
+    {
+        if (prefix == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (!(0 <= start && start < model.getCount()))
+            return -1;
+        return model.findPrefix(prefix, start, ignoreCase);
+    }
+
+    /**
+     * Returns the items starting with the prefix, ignoring case, that were
+     * used most often, best first.
+     *
+     * @param prefix the prefix
+     * @param count the maximum number of items to return
+     * @return the indices of the items
+     */
+    int[] getSuggestions(String prefix, int count)
+    {
+        if (prefix == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        ComboPrefixIndex index = model.getPrefixIndex(true);
+        index.merge(model.items);
+        int low = index.search(model.items, prefix, false);
+        int high = index.search(model.items, prefix, true);
+        return usageStats.top(model.items, index.order, low, high, count);
+    }
+
+    /**
+     * Records a use of the given text if it is the text of an item.
+     *
+     * @param string the text
+     */
+    void recordUsage(String string)
+    {
+        if (model.indexOf(string, 0) != -1)
+            usageStats.record(string);
+    }
+
+    /**
+     * Searches the items starting at the given index for an item that
+     * contains the query.
+     *
+     * @param query the query
+     * @param start the zero-relative index at which to begin the search
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the index of the item or -1
+     */
+    int indexOfContaining(String query, int start, boolean ignoreCase)
+    {
+        if (query == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (!(0 <= start && start < model.getCount()))
+            return -1;
+        return model.indexOfContaining(query, start, ignoreCase);
+    }
+
+    /**
+     * Removes the item at the given index.
+     *
+     * @param index the index of the item
+     * @param notify <code>true</code> to send Modify if the text changed
+     */
+    void remove(int index, boolean notify)
+    {
+        if (!(0 <= index && index < model.getCount()))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        int width = 0;
+        if ((style & SWT.VIRTUAL) == 0)
+        {
+            beginMeasure();
+            width = untrackItem(model.getItem(index));
+            endMeasure();
+        }
+        int length = backend.getTextLength();
+        int code = backend.deleteItem(index);
+        if (code == ComboBackend.ERROR)
+        {
+            widthTracker.invalidate();
+            SWT.error(SWT.ERROR_ITEM_NOT_REMOVED);
+        }
+        releaseImages(index, index);
+        model.remove(index);
+        if ((style & SWT.H_SCROLL) != 0)
+            setScrollWidth(width, false);
+        if (notify && length != backend.getTextLength())
+        {
+            sendEvent(SWT.Modify);
+            if (host.isDisposed())
+                return;
+        }
+        /*
+         * Bug in Windows. When the combo box is read only with exactly one item
+         * that is currently selected and that item is removed, the combo box
+         * does not redraw to clear the text area. The fix is to force a redraw.
+         */
+        if ((style & SWT.READ_ONLY) != 0)
+        {
+            if (model.getCount() == 0)
+                backend.redraw();
+        }
+    }
+
+    /**
+     * Removes the items between the given indices (inclusive).
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     */
+    void remove(int start, int end)
+    {
+        if (start > end)
+            return;
+        int count = model.getCount();
+        if (!(0 <= start && start <= end && end < count))
+        {
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        }
+        int textLength = backend.getTextLength();
+        int newWidth = 0;
+        boolean measure = (style & SWT.VIRTUAL) == 0;
+        if (measure)
+            beginMeasure();
+        /*
+         * Delete the native rows from the last one, so that the rows behind
+         * the range are not moved once per item, and update the model once.
+         */
+        for (int i = end; i >= start; i--)
+        {
+            if (measure)
+            {
+                newWidth = Math.max(newWidth, untrackItem(model.getItem(i)));
+            }
+            int result = backend.deleteItem(i);
+            if (result == ComboBackend.ERROR)
+            {
+                /* The item is still in the list, its width is not tracked */
+                widthTracker.invalidate();
+                if (measure)
+                    endMeasure();
+                if (i < end)
+                {
+                    releaseImages(i + 1, end);
+                    model.remove(i + 1, end);
+                }
+                SWT.error(SWT.ERROR_ITEM_NOT_REMOVED);
+            }
+        }
+        releaseImages(start, end);
+        model.remove(start, end);
+        if (measure)
+            endMeasure();
+        if ((style & SWT.H_SCROLL) != 0)
+            setScrollWidth(newWidth, false);
+        if (textLength != backend.getTextLength())
+        {
+            sendEvent(SWT.Modify);
+            if (host.isDisposed())
+                return;
+        }
+        /*
+         * Bug in Windows. When the combo box is read only with exactly one item
+         * that is currently selected and that item is removed, the combo box
+         * does not redraw to clear the text area. The fix is to force a redraw.
+         */
+        if ((style & SWT.READ_ONLY) != 0)
+        {
+            if (model.getCount() == 0)
+                backend.redraw();
+        }
+    }
+
+    /**
+     * Removes all items.
+     */
+    void removeAll()
+    {
+        backend.deleteAll();
+        model.removeAll();
+        releaseImageList();
+        widthTracker.reset(backend.getFont());
+        sendEvent(SWT.Modify);
+        if (host.isDisposed())
+            return;
+        if ((style & SWT.H_SCROLL) != 0)
+            setScrollWidth(0);
+    }
+
+    /**
+     * Selects the item at the given index. Indices that are out of range are
+     * ignored.
+     *
+     * @param index the index of the item
+     */
+    void select(int index)
+    {
+        int count = model.getCount();
+
+        if (0 <= index && index < count)
+        {
+            int selection = backend.getSelection();
+            int code = backend.setSelection(index);
+
+            if (code != ComboBackend.ERROR && code != selection)
+            {
+                sendEvent(SWT.Modify);
+            }
+        }
+    }
+
+    /**
+     * Replaces the item at the given index, keeping the selection.
+     *
+     * @param index the index of the item
+     * @param image the new image or <code>null</code>
+     * @param string the new text
+     */
+    void setItem(int index, Object image, String string)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        int selection = backend.getSelection();
+        beginUpdate();
+        try
+        {
+            remove(index, false);
+            if (host.isDisposed())
+                return;
+            add(string, image, index);
+            if (selection != -1)
+                select(selection);
+        }
+        finally
+        {
+            if (!host.isDisposed())
+                endUpdate();
+        }
+    }
+
+    /**
+     * Stores the contents of an item of a virtual widget answered by the
+     * host.
+     *
+     * @param index the index of the item
+     * @param string the text of the item or <code>null</code>
+     * @param image the image of the item or <code>null</code>
+     */
+    void setVirtualItem(int index, String string, Object image)
+    {
+        if (index >= model.getCount())
+        {
+            return;
+        }
+
+        if (string != null || image != null)
+        {
+            ((ComboVirtualModel) model).setItem(index, string != null ? string : "", addImage(image));
+        }
+    }
+
+    /**
+     * Sets the number of items.
+     *
+     * @param count the number of items
+     */
+    void setItemCount(int count)
+    {
+        count = Math.max(0, count);
+        int oldCount = model.getCount();
+
+        if (count == oldCount)
+        {
+            return;
+        }
+
+        if ((style & SWT.VIRTUAL) == 0)
+        {
+            if (count < oldCount)
+            {
+                remove(count, oldCount - 1);
+            }
+            else
+            {
+                for (int i = oldCount; i < count; i++)
+                {
+                    add("", null, -1);
+                }
+            }
+
+            return;
+        }
+
+        boolean redraw = backend.suspendRedraw();
+
+        if (count < oldCount)
+        {
+            releaseImages(count, oldCount - 1);
+        }
+
+        if (count == 0)
+        {
+            backend.deleteAll();
+            releaseImageList();
+        }
+        else if (count < oldCount)
+        {
+            for (int i = oldCount - 1; i >= count; i--)
+            {
+                backend.deleteItem(i);
+            }
+        }
+        else
+        {
+            backend.initStorage(count - oldCount, 0);
+
+            for (int i = oldCount; i < count; i++)
+            {
+                if (insertItem(i, null, -1) == ComboBackend.ERROR)
+                {
+                    count = i;
+                    break;
+                }
+            }
+        }
+
+        ((ComboVirtualModel) model).setItemCount(count);
+
+        if (redraw)
+            backend.resumeRedraw();
+
+        if (oldCount != count && (style & SWT.READ_ONLY) != 0 && count == 0)
+        {
+            backend.redraw();
+        }
+    }
+
+    /**
+     * Replaces all items in one batch.
+     *
+     * @param items the texts of the items
+     * @param images the images of the items, or <code>null</code> if the
+     *            items have no images
+     */
+    void setItems(String[] items, Object[] images)
+    {
+        if (items == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (images != null && images.length != items.length)
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        int length = items.length;
+        int charCount = 0;
+        for (int i = 0; i < length; i++)
+        {
+            if (items[i] == null)
+                SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+            charCount += items[i].length() + 1;
+        }
+        boolean redraw = backend.suspendRedraw();
+        if ((style & SWT.H_SCROLL) != 0)
+            setScrollWidth(0);
+        backend.deleteAll();
+        model.removeAll();
+        releaseImageList();
+        backend.initStorage(length, charCount);
+        int[] imageIndices = new int[length];
+        for (int i = 0; i < length; i++)
+        {
+            imageIndices[i] = addImage(images != null ? images[i] : null);
+            if (insertItem(i, items[i], imageIndices[i]) == ComboBackend.ERROR)
+            {
+                releaseImage(imageIndices[i]);
+                String[] newItems = new String[i];
+                System.arraycopy(items, 0, newItems, 0, i);
+                model.setItems(newItems, imageIndices);
+                widthTracker.invalidate();
+                if (redraw)
+                    backend.resumeRedraw();
+                SWT.error(SWT.ERROR_ITEM_NOT_ADDED);
+            }
+        }
+        model.setItems(items, imageIndices);
+        if ((style & SWT.VIRTUAL) == 0)
+        {
+            beginMeasure();
+            widthTracker.reset(measureFont);
+            for (int i = 0; i < length; i++)
+            {
+                widthTracker.add(measureItem(items[i]));
+            }
+            endMeasure();
+            if ((style & SWT.H_SCROLL) != 0)
+                setScrollWidth(widthTracker.getMax() + 3);
+        }
+        if (redraw)
+            backend.resumeRedraw();
+        sendEvent(SWT.Modify);
+        // widget could be disposed at this point
+    }
+
+    /**
+     * Replaces the items with the given ones by inserting and deleting only
+     * the items that differ. New items have no image, items that are kept
+     * keep theirs. The selection stays on the same item, or moves to an
+     * equal item when the selected item is removed, and at most one Modify
+     * is sent.
+     *
+     * @param items the new texts of the items
+     */
+    void updateItems(String[] items)
+    {
+        if (items == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i] == null)
+                SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        }
+        String[] oldItems = (style & SWT.VIRTUAL) != 0 ? model.getItems() : model.items;
+        ComboItemDiff diff = new ComboItemDiff(oldItems, model.getCount(), items);
+        if (diff.isEmpty())
+            return;
+        int selection = backend.getSelection();
+        String selected = selection != -1 ? model.getItem(selection) : null;
+        /*
+         * Resetting the list and inserting every new item takes fewer calls
+         * than a long script, for example when a filter narrows a long list.
+         * Only lists whose items use no image are reset, the images would be
+         * lost.
+         */
+        if (diff.deleteCount + diff.insertCount > items.length + 1 && imageRegistry.isEmpty())
+        {
+            String text = backend.getText();
+            boolean editable = (style & SWT.READ_ONLY) == 0;
+            int editSelection = editable ? backend.getEditSelection() : 0;
+            boolean modify = updateModify;
+            beginUpdate();
+            try
+            {
+                setItems(items, null);
+                if (selected != null)
+                {
+                    int index = model.indexOf(selected, 0);
+                    if (index != -1)
+                        backend.setSelection(index);
+                }
+                /* Resetting the list cleared the text field */
+                if (editable)
+                {
+                    if (!text.equals(backend.getText()))
+                        backend.setText(text);
+                    backend.setEditSelection(editSelection);
+                }
+                /* setItems() always reports a change */
+                updateModify = modify || !text.equals(backend.getText());
+            }
+            finally
+            {
+                if (!host.isDisposed())
+                    endUpdate();
+            }
+            return;
+        }
+        String text = backend.getText();
+        boolean measure = (style & SWT.VIRTUAL) == 0;
+        beginUpdate();
+        try
+        {
+            if (measure)
+                beginMeasure();
+            int position = diff.start, i = diff.start, j = diff.start;
+            while (i < diff.oldEnd || j < diff.newEnd)
+            {
+                if (i < diff.oldEnd && diff.isDeleted(i))
+                {
+                    if (measure)
+                        untrackItem(model.getItem(position));
+                    if (backend.deleteItem(position) == ComboBackend.ERROR)
+                    {
+                        widthTracker.invalidate();
+                        SWT.error(SWT.ERROR_ITEM_NOT_REMOVED);
+                    }
+                    releaseImages(position, position);
+                    model.remove(position);
+                    i++;
+                }
+                else if (j < diff.newEnd && diff.isInserted(j))
+                {
+                    if (insertItem(position, items[j], -1) == ComboBackend.ERROR)
+                    {
+                        widthTracker.invalidate();
+                        SWT.error(SWT.ERROR_ITEM_NOT_ADDED);
+                    }
+                    model.add(items[j], -1, position);
+                    if (measure)
+                    {
+                        int width = measureItem(items[j]);
+                        if (widthTracker.isValid(measureFont))
+                            widthTracker.add(width);
+                    }
+                    position++;
+                    j++;
+                }
+                else
+                {
+                    position++;
+                    i++;
+                    j++;
+                }
+            }
+            if (selected != null && backend.getSelection() == -1)
+            {
+                int index = model.indexOf(selected, 0);
+                if (index != -1)
+                    backend.setSelection(index);
+            }
+            if ((style & SWT.H_SCROLL) != 0)
+                setScrollWidth();
+            if (!text.equals(backend.getText()))
+                sendEvent(SWT.Modify);
+        }
+        finally
+        {
+            if (measure)
+                endMeasure();
+            if (!host.isDisposed())
+                endUpdate();
+        }
+    }
+
+    /**
+     * Sets the drop-down width to fit the widest item.
+     */
+    void setScrollWidth()
+    {
+        setScrollWidth(getMaxItemWidth() + 3);
+    }
+
+    /**
+     * Sets the drop-down width, or defers it to the end of the current
+     * update.
+     *
+     * @param scrollWidth the new width
+     */
+    void setScrollWidth(int scrollWidth)
+    {
+        if (updateCount > 0)
+        {
+            updateScrollWidth = true;
+            return;
+        }
+        this.scrollWidth = scrollWidth;
+        backend.setScrollWidth(scrollWidth, model.getCount());
+    }
+
+    /**
+     * Updates the drop-down width after an item of the given width was added
+     * or removed.
+     *
+     * @param newWidth the width of the item
+     * @param grow <code>true</code> if the item was added
+     */
+    void setScrollWidth(int newWidth, boolean grow)
+    {
+        /* scrollWidth includes the 3 pixel margin added by setScrollWidth() */
+        if (grow)
+        {
+            if (newWidth + 3 <= scrollWidth)
+                return;
+            setScrollWidth(newWidth + 3);
+        }
+        else
+        {
+            if (newWidth + 3 < scrollWidth)
+                return;
+            setScrollWidth();
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Filters a list of item texts on a worker thread.
+ * <p>
+ * An item matches a query when it contains the query, ignoring case. Every
+ * call of <code>filter()</code> starts a new job and cancels the one before
+ * it; a job that is cancelled stops within <code>CHECK_INTERVAL</code> items
+ * and delivers nothing. Each job carries a generation number, and
+ * <code>isCurrent()</code> tells whether a delivered result is still the
+ * newest one, so a result that arrives late can be dropped.
+ * </p>
+ * <p>
+ * When a query contains the previous completed query, its matches are a
+ * subset of the previous matches, so only those are searched again. Other
+ * queries of three or more characters are answered from a
+ * <code>ComboTrigramIndex</code> of the items, which is kept until the items
+ * change. The index is built by the jobs that need it; a job that is
+ * cancelled while building stops within <code>CHECK_INTERVAL</code> items
+ * and the next job resumes the build where it stopped.
+ * </p>
+ * <p>
+ * The worker is a single daemon thread that is started by the first job and
+ * ends when the filter is disposed. Results are passed to a
+ * <code>Receiver</code> on the worker thread.
+ * </p>
+ */
+class ComboFilter
+{
+
+    static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Receives the results of the filter jobs.
+     */
+    interface Receiver
+    {
+
+        /**
+         * Called on the worker thread when a job has completed.
+         *
+         * @param generation the generation of the job
+         * @param query the query of the job
+         * @param items the matching items in list order
+         */
+        void filtered(int generation, String query, String[] items);
+
+    }
+
+    Receiver receiver;
+
+    /* Guarded by this */
+    String[] source = new String[0];
+    String pendingQuery;
+    volatile int generation;
+    boolean disposed;
+    Thread worker;
+
+    /* Only used by the worker */
+    ComboTrigramIndex index;
+    String[] indexSource;
+    int indexCount;
+    String[] lastSource;
+    String lastQuery;
+    int[] lastMatches;
+    int lastCount;
+
+    /**
+     * Creates a filter.
+     *
+     * @param receiver the receiver of the results
+     */
+    ComboFilter(Receiver receiver)
+    {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Sets the items to filter and cancels the current job.
+     *
+     * @param items the items, not copied
+     */
+    synchronized void setSource(String[] items)
+    {
+        source = items;
+        pendingQuery = null;
+        generation++;
+    }
+
+    /**
+     * Returns the items that are filtered.
+     *
+     * @return the items
+     */
+    synchronized String[] getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Starts a job for the query and cancels the current one.
+     *
+     * @param query the query
+     * @return the generation of the new job
+     */
+    synchronized int filter(String query)
+    {
+        if (disposed)
+        {
+            return generation;
+        }
+
+        pendingQuery = query;
+        generation++;
+
+        if (worker == null)
+        {
+            worker = new Thread("ComboBoxEx filter")
+            {
+                public void run()
+                {
+                    work();
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        notifyAll();
+        return generation;
+    }
+
+    /**
+     * Cancels the current job.
+     */
+    synchronized void cancel()
+    {
+        pendingQuery = null;
+        generation++;
+    }
+
+    /**
+     * Returns whether the given generation is the one of the newest job.
+     *
+     * @param jobGeneration the generation of a job
+     * @return <code>true</code> if no job was started or cancelled since
+     */
+    boolean isCurrent(int jobGeneration)
+    {
+        return generation == jobGeneration;
+    }
+
+    /**
+     * Cancels the current job and ends the worker thread.
+     */
+    synchronized void dispose()
+    {
+        disposed = true;
+        pendingQuery = null;
+        generation++;
+        notifyAll();
+    }
+
+    void work()
+    {
+        while (true)
+        {
+            String query;
+            String[] items;
+            int jobGeneration;
+
+            synchronized (this)
+            {
+                while (pendingQuery == null && !disposed)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+
+                if (disposed)
+                {
+                    return;
+                }
+
+                query = pendingQuery;
+                items = source;
+                jobGeneration = generation;
+                pendingQuery = null;
+            }
+
+            String[] result = run(items, query, jobGeneration);
+
+            if (result != null && isCurrent(jobGeneration))
+            {
+                receiver.filtered(jobGeneration, query, result);
+            }
+        }
+    }
+
+    /**
+     * Runs a job on the worker thread.
+     *
+     * @return the matching items or <code>null</code> if the job was
+     *         cancelled
+     */
+    String[] run(String[] items, String query, final int jobGeneration)
+    {
+        String lowerQuery = ComboTrigramIndex.fold(query);
+        int[] matches;
+        int matchCount = 0;
+
+        boolean narrow = items == lastSource && lastQuery != null && lowerQuery.indexOf(lastQuery) != -1;
+
+        if (!narrow && query.length() >= 3)
+        {
+            ComboTrigramIndex.CancelCheck check = new ComboTrigramIndex.CancelCheck()
+            {
+                public boolean isCancelled()
+                {
+                    return !isCurrent(jobGeneration);
+                }
+            };
+
+            if (index == null || indexSource != items)
+            {
+                index = new ComboTrigramIndex();
+                indexSource = items;
+                indexCount = 0;
+            }
+
+            indexCount = index.build(items, indexCount, items.length, check);
+            if (indexCount < items.length)
+            {
+                return null;
+            }
+
+            matches = index.find(items, items.length, query, 0, true, Integer.MAX_VALUE, check);
+            if (matches == null)
+            {
+                return null;
+            }
+            matchCount = matches.length;
+        }
+        else
+        {
+            int count = narrow ? lastCount : items.length;
+            matches = new int[Math.min(count, 1024)];
+
+            for (int i = 0; i < count; i++)
+            {
+                if (i % CHECK_INTERVAL == 0 && !isCurrent(jobGeneration))
+                {
+                    return null;
+                }
+
+                int position = narrow ? lastMatches[i] : i;
+                if (ComboTrigramIndex.contains(items[position], query, true))
+                {
+                    matches = ComboTrigramIndex.append(matches, matchCount++, position);
+                }
+            }
+        }
+
+        lastSource = items;
+        lastQuery = lowerQuery;
+        lastMatches = matches;
+        lastCount = matchCount;
+
+        String[] result = new String[matchCount];
+        for (int i = 0; i < matchCount; i++)
+        {
+            result[i] = items[matches[i]];
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,245 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Assigns image list indices to the images used by the items of a
+ * <code>ComboBoxEx</code>.
+ * <p>
+ * Images are keyed by <code>equals()</code>, which for SWT images compares
+ * the native handle, so an image that is used by many items occupies a single
+ * image list entry. Every index keeps a reference count; when the last item
+ * using an image is removed the index is released and reused by the next new
+ * image. The class has no dependency on the Win32 layer.
+ * </p>
+ * <p>
+ * Images are found by an open addressing table with linear probing whose
+ * slots hold the index of the image plus one, 0 marking an empty slot.
+ * </p>
+ */
+class ComboImageRegistry
+{
+
+    Object[] images = new Object[4];
+    int[] references = new int[4];
+    int size;
+
+    int[] free = new int[4];
+    int freeCount;
+
+    /* Index plus one of the image in each slot, 0 when the slot is empty */
+    int[] table = new int[8];
+    int used;
+
+    /**
+     * Returns the index of the given image, or -1 if it is not registered.
+     *
+     * @param image the image
+     * @return the index of the image
+     */
+    int indexOf(Object image)
+    {
+        return table[slot(image)] - 1;
+    }
+
+    /**
+     * Returns the slot of the given image, or the empty slot where it would
+     * be inserted.
+     */
+    int slot(Object image)
+    {
+        int mask = table.length - 1;
+        int slot = ComboTextIndex.mix(image.hashCode()) & mask;
+
+        while (table[slot] != 0 && !images[table[slot] - 1].equals(image))
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Removes the image in the given slot, moving back the images that
+     * probed past it.
+     */
+    void delete(int slot)
+    {
+        int mask = table.length - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+
+        while (table[next] != 0)
+        {
+            int home = ComboTextIndex.mix(images[table[next] - 1].hashCode()) & mask;
+
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                table[hole] = table[next];
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        table[hole] = 0;
+        used--;
+    }
+
+    /**
+     * Moves all images into a table with twice the number of slots.
+     */
+    void rehash()
+    {
+        int[] oldTable = table;
+        table = new int[oldTable.length * 2];
+
+        for (int i = 0; i < oldTable.length; i++)
+        {
+            if (oldTable[i] != 0)
+            {
+                table[slot(images[oldTable[i] - 1])] = oldTable[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the given image and increments its reference
+     * count. An image that is not registered yet is assigned a released index
+     * if there is one, otherwise the next new index.
+     *
+     * @param image the image
+     * @return the index of the image
+     */
+    int acquire(Object image)
+    {
+        int index = indexOf(image);
+        if (index != -1)
+        {
+            references[index]++;
+            return index;
+        }
+
+        if (freeCount > 0)
+        {
+            index = free[--freeCount];
+        }
+        else
+        {
+            if (size == images.length)
+            {
+                Object[] newImages = new Object[size * 2];
+                System.arraycopy(images, 0, newImages, 0, size);
+                images = newImages;
+
+                int[] newReferences = new int[size * 2];
+                System.arraycopy(references, 0, newReferences, 0, size);
+                references = newReferences;
+            }
+
+            index = size++;
+        }
+
+        images[index] = image;
+        references[index] = 1;
+
+        if ((used + 1) * 2 > table.length)
+        {
+            rehash();
+        }
+        table[slot(image)] = index + 1;
+        used++;
+
+        return index;
+    }
+
+    /**
+     * Decrements the reference count of the given index and releases the
+     * index when it is no longer used.
+     *
+     * @param index the index of the image, -1 is ignored
+     * @return <code>true</code> if the index was released
+     */
+    boolean release(int index)
+    {
+        if (index < 0 || index >= size || references[index] == 0)
+        {
+            return false;
+        }
+
+        if (--references[index] > 0)
+        {
+            return false;
+        }
+
+        delete(slot(images[index]));
+        images[index] = null;
+
+        if (freeCount == free.length)
+        {
+            int[] newFree = new int[freeCount * 2];
+            System.arraycopy(free, 0, newFree, 0, freeCount);
+            free = newFree;
+        }
+
+        free[freeCount++] = index;
+        return true;
+    }
+
+    /**
+     * Returns the image registered at the given index.
+     *
+     * @param index the index of the image
+     * @return the image or <code>null</code> if the index is released
+     */
+    Object getImage(int index)
+    {
+        return images[index];
+    }
+
+    /**
+     * Returns the reference count of the given index.
+     *
+     * @param index the index of the image
+     * @return the reference count
+     */
+    int getReferences(int index)
+    {
+        return references[index];
+    }
+
+    /**
+     * Returns the number of indices handed out so far, including released
+     * ones. This is the number of entries in the image list.
+     *
+     * @return the number of indices
+     */
+    int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns whether no image is in use. Indices that were released do not
+     * count.
+     *
+     * @return <code>true</code> if no item uses an image
+     */
+    boolean isEmpty()
+    {
+        return used == 0;
+    }
+
+    /**
+     * Forgets all images and indices.
+     */
+    void clear()
+    {
+        images = new Object[4];
+        references = new int[4];
+        size = 0;
+        free = new int[4];
+        freeCount = 0;
+        table = new int[8];
+        used = 0;
+    }
+
+}
@@ -0,0 +1,247 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Shortest edit script between two lists of item texts.
+ * <p>
+ * The common prefix and suffix are trimmed first, so a list with a handful of
+ * changed items is compared in time proportional to the changed part. The
+ * rest is compared with the greedy algorithm of Myers, which runs in
+ * O((N + M) D) for D inserted and deleted items. Items are compared by hash
+ * code first and only equal hash codes are checked with
+ * <code>equals()</code>.
+ * </p>
+ * <p>
+ * When the script would be longer than <code>MAX_EDITS</code> the whole
+ * middle part is replaced instead, which bounds the memory kept for the
+ * backtracking.
+ * </p>
+ */
+class ComboItemDiff
+{
+
+    static final int MAX_EDITS = 1024;
+
+    /* The changed part is [start, oldEnd) of the old and [start, newEnd) of the new list */
+    int start, oldEnd, newEnd;
+
+    /* Relative to start */
+    boolean[] deleted, inserted;
+    int deleteCount, insertCount;
+
+    String[] oldItems, newItems;
+    int[] oldHashes, newHashes;
+
+    /**
+     * Compares two lists.
+     *
+     * @param oldItems the current items
+     * @param oldCount the number of current items
+     * @param newItems the new items
+     */
+    ComboItemDiff(String[] oldItems, int oldCount, String[] newItems)
+    {
+        this.oldItems = oldItems;
+        this.newItems = newItems;
+
+        int newCount = newItems.length;
+        int min = Math.min(oldCount, newCount);
+
+        while (start < min && oldItems[start].equals(newItems[start]))
+        {
+            start++;
+        }
+
+        oldEnd = oldCount;
+        newEnd = newCount;
+
+        while (oldEnd > start && newEnd > start && oldItems[oldEnd - 1].equals(newItems[newEnd - 1]))
+        {
+            oldEnd--;
+            newEnd--;
+        }
+
+        int n = oldEnd - start, m = newEnd - start;
+        deleted = new boolean[n];
+        inserted = new boolean[m];
+
+        if (n == 0 || m == 0 || !compare(n, m))
+        {
+            for (int i = 0; i < n; i++)
+            {
+                deleted[i] = true;
+            }
+
+            for (int j = 0; j < m; j++)
+            {
+                inserted[j] = true;
+            }
+
+            deleteCount = n;
+            insertCount = m;
+        }
+
+        this.oldItems = this.newItems = null;
+        oldHashes = newHashes = null;
+    }
+
+    /**
+     * Runs the algorithm of Myers on the changed part and marks the deleted
+     * and inserted items.
+     *
+     * @param n the length of the changed part of the old list
+     * @param m the length of the changed part of the new list
+     * @return <code>false</code> if the script is longer than
+     *         <code>MAX_EDITS</code>
+     */
+    boolean compare(int n, int m)
+    {
+        /* At least |n - m| items are inserted or deleted */
+        if (Math.abs(n - m) > MAX_EDITS)
+        {
+            return false;
+        }
+
+        oldHashes = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            oldHashes[i] = oldItems[start + i].hashCode();
+        }
+
+        newHashes = new int[m];
+        for (int j = 0; j < m; j++)
+        {
+            newHashes[j] = newItems[start + j].hashCode();
+        }
+
+        int limit = Math.min(n + m, MAX_EDITS);
+        int offset = limit + 1;
+        int[] v = new int[2 * limit + 3];
+        int[][] trace = new int[limit + 1][];
+
+        for (int d = 0; d <= limit; d++)
+        {
+            for (int k = -d; k <= d; k += 2)
+            {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                {
+                    x = v[offset + k + 1];
+                }
+                else
+                {
+                    x = v[offset + k - 1] + 1;
+                }
+
+                int y = x - k;
+                while (x < n && y < m && equal(x, y))
+                {
+                    x++;
+                    y++;
+                }
+
+                v[offset + k] = x;
+
+                if (x >= n && y >= m)
+                {
+                    backtrack(trace, d, n, m);
+                    return true;
+                }
+            }
+
+            /* Only the diagonals -d..d are read when backtracking */
+            int[] snapshot = new int[2 * d + 1];
+            System.arraycopy(v, offset - d, snapshot, 0, snapshot.length);
+            trace[d] = snapshot;
+        }
+
+        return false;
+    }
+
+    boolean equal(int x, int y)
+    {
+        return oldHashes[x] == newHashes[y] && oldItems[start + x].equals(newItems[start + y]);
+    }
+
+    /**
+     * Walks the script back from the end and marks the deleted and inserted
+     * items.
+     */
+    void backtrack(int[][] trace, int d, int n, int m)
+    {
+        int x = n, y = m;
+
+        for (; d > 0; d--)
+        {
+            int[] previous = trace[d - 1];
+            int k = x - y;
+
+            /* previous holds the diagonals -(d - 1)..(d - 1) */
+            int prevK;
+            if (k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]))
+            {
+                prevK = k + 1;
+            }
+            else
+            {
+                prevK = k - 1;
+            }
+
+            int prevX = previous[prevK + d - 1];
+            int prevY = prevX - prevK;
+
+            while (x > prevX && y > prevY)
+            {
+                x--;
+                y--;
+            }
+
+            if (x == prevX)
+            {
+                inserted[prevY] = true;
+                insertCount++;
+            }
+            else
+            {
+                deleted[prevX] = true;
+                deleteCount++;
+            }
+
+            x = prevX;
+            y = prevY;
+        }
+    }
+
+    /**
+     * Returns whether the lists are equal.
+     *
+     * @return <code>true</code> if there is nothing to change
+     */
+    boolean isEmpty()
+    {
+        return deleteCount == 0 && insertCount == 0;
+    }
+
+    /**
+     * Returns whether the item at the given index of the old list is deleted.
+     *
+     * @param index the index in the old list
+     * @return <code>true</code> if the item is deleted
+     */
+    boolean isDeleted(int index)
+    {
+        return start <= index && index < oldEnd && deleted[index - start];
+    }
+
+    /**
+     * Returns whether the item at the given index of the new list is
+     * inserted.
+     *
+     * @param index the index in the new list
+     * @return <code>true</code> if the item is inserted
+     */
+    boolean isInserted(int index)
+    {
+        return start <= index && index < newEnd && inserted[index - start];
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Receives the items of a <code>ComboBoxEx</code> one at a time, in order.
+ *
+ * @see ComboBoxEx#visitItems(int, int, ComboItemVisitor)
+ */
+public interface ComboItemVisitor
+{
+
+    /**
+     * Called for each visited item.
+     *
+     * @param index the zero-relative index of the item
+     * @param item the text of the item
+     * @return <code>false</code> to stop visiting, <code>true</code> to go on
+     */
+    boolean visit(int index, String item);
+
+}
@@ -0,0 +1,28 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Receives the progress of items loaded into a <code>ComboBoxEx</code> in
+ * the background. Both methods are called on the UI thread.
+ *
+ * @see ComboBoxEx#load(java.util.Iterator, ComboLoadListener)
+ */
+public interface ComboLoadListener
+{
+
+    /**
+     * Called after each chunk of items was added.
+     *
+     * @param loaded the number of items added so far
+     */
+    void loadProgress(int loaded);
+
+    /**
+     * Called once when loading ends.
+     *
+     * @param loaded the number of items added
+     * @param cancelled <code>true</code> if loading was cancelled before the
+     *            iterator was exhausted
+     */
+    void loadCompleted(int loaded, boolean cancelled);
+
+}
@@ -0,0 +1,153 @@
+package org.eclipse.swt.widgets;
+
+import java.util.Iterator;
+
+import org.eclipse.swt.SWT;
+
+/**
+ * Appends the items of an iterator to a <code>ComboCore</code> in chunks.
+ * <p>
+ * Each call of <code>run()</code> adds items until the time budget of the
+ * chunk is used up, inside one <code>beginUpdate()</code>/
+ * <code>endUpdate()</code> so that the drop-down width is computed and the
+ * control redrawn once per chunk. The clock is read every
+ * <code>CHECK_INTERVAL</code> items. Items are only appended, so the
+ * selection is not moved by loading. Scheduling the chunks is left to the
+ * caller.
+ * </p>
+ */
+class ComboLoader
+{
+
+    static final int CHECK_INTERVAL = 16;
+
+    ComboCore core;
+    Iterator iterator;
+    ComboLoadListener listener;
+    long budget;
+
+    int loaded;
+    boolean done;
+
+    /**
+     * Creates a loader.
+     *
+     * @param core the core to add the items to
+     * @param iterator the items, <code>String</code>s
+     * @param listener the listener or <code>null</code>
+     * @param budget the time budget of a chunk in nanoseconds
+     */
+    ComboLoader(ComboCore core, Iterator iterator, ComboLoadListener listener, long budget)
+    {
+        this.core = core;
+        this.iterator = iterator;
+        this.listener = listener;
+        this.budget = budget;
+    }
+
+    /**
+     * Adds the next chunk of items. The listener is notified once when
+     * loading ends, also when the chunk ends it with an error or finds the
+     * host disposed, in which case loading counts as cancelled.
+     *
+     * @return <code>true</code> if there are more items to add
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_ARGUMENT - if the iterator returns an
+     *                item that is not a string</li>
+     *                </ul>
+     */
+    boolean run()
+    {
+        if (done)
+        {
+            return false;
+        }
+
+        boolean more;
+        boolean failed = true;
+        try
+        {
+            long deadline = System.nanoTime() + budget;
+            core.beginUpdate();
+            try
+            {
+                for (int i = 1; iterator.hasNext(); i++)
+                {
+                    Object item = iterator.next();
+                    if (!(item instanceof String))
+                    {
+                        SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+                    }
+
+                    core.add((String) item, null, -1);
+                    loaded++;
+
+                    if (i % CHECK_INTERVAL == 0 && System.nanoTime() >= deadline)
+                    {
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                if (!core.host.isDisposed())
+                    core.endUpdate();
+            }
+
+            if (core.host.isDisposed())
+            {
+                return false;
+            }
+            more = iterator.hasNext();
+            failed = false;
+        }
+        finally
+        {
+            if (failed)
+            {
+                complete(true);
+            }
+        }
+
+        if (listener != null)
+        {
+            listener.loadProgress(loaded);
+        }
+        if (!more)
+        {
+            complete(false);
+        }
+
+        return !done;
+    }
+
+    /**
+     * Stops loading and notifies the listener, unless loading has ended.
+     */
+    void cancel()
+    {
+        complete(true);
+    }
+
+    /**
+     * Ends loading and notifies the listener, unless loading has ended.
+     *
+     * @param cancelled whether loading ended before the iterator was
+     *            exhausted
+     */
+    void complete(boolean cancelled)
+    {
+        if (done)
+        {
+            return;
+        }
+
+        done = true;
+        if (listener != null)
+        {
+            listener.loadCompleted(loaded, cancelled);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Per-message counters of a <code>ComboBoxEx</code> window procedure.
+ * <p>
+ * For every message id the number of messages and the cumulative time spent
+ * handling them is kept. Message ids below <code>SIZE - 1</code> have their
+ * own slot, which covers the window messages and the combo box and
+ * COMBOBOXEX messages; all other ids share the last slot. The time of a
+ * message includes the time of messages sent while it is handled.
+ * </p>
+ */
+class ComboMessageStats
+{
+
+    static final int SIZE = 0x800;
+
+    long[] counts = new long[SIZE];
+    long[] nanos = new long[SIZE];
+
+    /**
+     * Records one handled message.
+     *
+     * @param msg the message id
+     * @param time the time spent handling the message in nanoseconds
+     */
+    void record(int msg, long time)
+    {
+        int slot = slot(msg);
+        counts[slot]++;
+        nanos[slot] += time;
+    }
+
+    /**
+     * Returns the number of handled messages with the given id.
+     *
+     * @param msg the message id
+     * @return the number of messages
+     */
+    long getCount(int msg)
+    {
+        return counts[slot(msg)];
+    }
+
+    /**
+     * Returns the cumulative time spent handling messages with the given id.
+     *
+     * @param msg the message id
+     * @return the time in nanoseconds
+     */
+    long getNanos(int msg)
+    {
+        return nanos[slot(msg)];
+    }
+
+    /**
+     * Returns the ids of the messages that were handled at least once, in
+     * ascending order. Ids without their own slot are reported as
+     * <code>SIZE - 1</code>.
+     *
+     * @return the message ids
+     */
+    int[] getMessages()
+    {
+        int length = 0;
+        for (int i = 0; i < SIZE; i++)
+        {
+            if (counts[i] != 0)
+            {
+                length++;
+            }
+        }
+
+        int[] result = new int[length];
+        for (int i = 0, j = 0; i < SIZE; i++)
+        {
+            if (counts[i] != 0)
+            {
+                result[j++] = i;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    void reset()
+    {
+        for (int i = 0; i < SIZE; i++)
+        {
+            counts[i] = nanos[i] = 0;
+        }
+    }
+
+    static int slot(int msg)
+    {
+        return msg >= 0 && msg < SIZE - 1 ? msg : SIZE - 1;
+    }
+
+}
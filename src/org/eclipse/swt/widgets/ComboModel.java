@@ -0,0 +1,377 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Java-side mirror of the items held by a <code>ComboBoxEx</code>.
+ * <p>
+ * The native control is only written to; every read API of the widget is
+ * answered from this store, so reading an item costs an array access instead
+ * of a <code>CB_GETLBTEXTLEN</code>/<code>CB_GETLBTEXT</code> round trip.
+ * The class has no dependency on the Win32 layer and can be used on its own.
+ * </p>
+ * <p>
+ * An exact-match index from item text to positions answers
+ * <code>indexOf()</code> without scanning the list. It is kept up to date
+ * when items are appended, removed from the end or replaced; inserting or
+ * removing an item in the middle would move the positions behind it, so the
+ * index is marked stale instead and rebuilt once by the next lookup. The
+ * prefix index for <code>findPrefix()</code> and the trigram index for
+ * <code>indexOfContaining()</code> are built on first use and kept up to
+ * date as long as items are only appended; any other change drops them and
+ * the next search builds them again.
+ * </p>
+ * <p>
+ * Range checking is left to the caller.
+ * </p>
+ */
+class ComboModel
+{
+
+    static final int GROW = 16;
+
+    String[] items = new String[GROW];
+    int[] images = new int[GROW];
+    int count;
+
+    ComboTextIndex textIndex = new ComboTextIndex();
+
+    /* Set by changes in the middle of the list, cleared by the next lookup */
+    boolean textIndexStale;
+
+    /* Case-sensitive and case-insensitive prefix index, built by the first findPrefix() */
+    ComboPrefixIndex[] prefixIndexes = new ComboPrefixIndex[2];
+
+    /* Built by the first indexOfContaining(), extended by appends only */
+    ComboTrigramIndex trigramIndex;
+
+    /**
+     * Returns the number of items.
+     *
+     * @return the number of items
+     */
+    int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the text of the item at the given index.
+     *
+     * @param index the index of the item
+     * @return the text of the item
+     */
+    String getItem(int index)
+    {
+        return items[index];
+    }
+
+    /**
+     * Returns the image index of the item at the given index, or -1 if the
+     * item has no image.
+     *
+     * @param index the index of the item
+     * @return the image index of the item
+     */
+    int getImage(int index)
+    {
+        return images[index];
+    }
+
+    /**
+     * Returns a copy of the item texts.
+     *
+     * @return the item texts
+     */
+    String[] getItems()
+    {
+        String[] result = new String[count];
+        System.arraycopy(items, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Copies the texts of a range of items into the array.
+     *
+     * @param start the index of the first item
+     * @param length the number of items
+     * @param dest the array, at least <code>length</code> long
+     */
+    void getItems(int start, int length, String[] dest)
+    {
+        System.arraycopy(items, start, dest, 0, length);
+    }
+
+    /**
+     * Inserts an item at the given index.
+     *
+     * @param string the text of the item
+     * @param image the image index of the item
+     * @param index the index of the item, between 0 and the item count
+     */
+    void add(String string, int image, int index)
+    {
+        ensureCapacity(count + 1);
+
+        if (index < count)
+        {
+            System.arraycopy(items, index, items, index + 1, count - index);
+            System.arraycopy(images, index, images, index + 1, count - index);
+            textIndexStale = true;
+        }
+
+        items[index] = string;
+        images[index] = image;
+        count++;
+
+        if (string != null && !textIndexStale)
+        {
+            textIndex.add(string, index);
+        }
+
+        if (index < count - 1)
+        {
+            clearSearchIndexes();
+            return;
+        }
+
+        for (int i = 0; i < prefixIndexes.length; i++)
+        {
+            if (prefixIndexes[i] != null)
+            {
+                prefixIndexes[i].append(items, index);
+            }
+        }
+
+        if (trigramIndex != null && string != null)
+        {
+            trigramIndex.add(string, index);
+        }
+    }
+
+    /**
+     * Removes the item at the given index.
+     *
+     * @param index the index of the item
+     */
+    void remove(int index)
+    {
+        remove(index, index);
+    }
+
+    /**
+     * Removes the items between the given indices (inclusive).
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     */
+    void remove(int start, int end)
+    {
+        int length = end - start + 1;
+
+        if (end + 1 < count)
+        {
+            textIndexStale = true;
+        }
+        else if (!textIndexStale)
+        {
+            for (int i = start; i <= end; i++)
+            {
+                if (items[i] != null)
+                {
+                    textIndex.remove(items[i], i);
+                }
+            }
+        }
+
+        System.arraycopy(items, end + 1, items, start, count - end - 1);
+        System.arraycopy(images, end + 1, images, start, count - end - 1);
+
+        for (int i = count - length; i < count; i++)
+        {
+            items[i] = null;
+        }
+
+        count -= length;
+        clearSearchIndexes();
+    }
+
+    /**
+     * Replaces the item at the given index.
+     *
+     * @param index the index of the item
+     * @param string the new text of the item
+     * @param image the new image index of the item
+     */
+    void setItem(int index, String string, int image)
+    {
+        String oldString = items[index];
+
+        if (oldString != null)
+        {
+            if (!textIndexStale)
+            {
+                textIndex.remove(oldString, index);
+            }
+        }
+
+        items[index] = string;
+        images[index] = image;
+        clearSearchIndexes();
+
+        if (string != null && !textIndexStale)
+        {
+            textIndex.add(string, index);
+        }
+    }
+
+    /**
+     * Replaces all items.
+     *
+     * @param strings the item texts
+     * @param imageIndices the image indices of the items, or <code>null</code>
+     *            if the items have no images
+     */
+    void setItems(String[] strings, int[] imageIndices)
+    {
+        int length = strings.length;
+
+        items = new String[Math.max(length, GROW)];
+        images = new int[items.length];
+        System.arraycopy(strings, 0, items, 0, length);
+
+        if (imageIndices != null)
+        {
+            System.arraycopy(imageIndices, 0, images, 0, length);
+        }
+        else
+        {
+            for (int i = 0; i < length; i++)
+            {
+                images[i] = -1;
+            }
+        }
+
+        count = length;
+        textIndex.build(items, count);
+        textIndexStale = false;
+        clearSearchIndexes();
+    }
+
+    /**
+     * Removes all items.
+     */
+    void removeAll()
+    {
+        items = new String[GROW];
+        images = new int[GROW];
+        count = 0;
+        textIndex.clear();
+        textIndexStale = false;
+        clearSearchIndexes();
+    }
+
+    /**
+     * Searches the items starting at the given index for an item that is
+     * equal to the argument.
+     *
+     * @param string the search item
+     * @param start the zero-relative index at which to begin the search
+     * @return the index of the item or -1
+     */
+    int indexOf(String string, int start)
+    {
+        if (textIndexStale)
+        {
+            textIndex.build(items, count);
+            textIndexStale = false;
+        }
+
+        return textIndex.indexOf(string, Math.max(start, 0));
+    }
+
+    /**
+     * Searches the items starting at the given index for an item that
+     * starts with the prefix.
+     *
+     * @param prefix the prefix
+     * @param start the zero-relative index at which to begin the search
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the index of the item or -1
+     */
+    int findPrefix(String prefix, int start, boolean ignoreCase)
+    {
+        return getPrefixIndex(ignoreCase).find(items, prefix, Math.max(start, 0));
+    }
+
+    /**
+     * Returns the prefix index of the given kind, building it if needed.
+     *
+     * @param ignoreCase <code>true</code> for the case-insensitive index
+     * @return the prefix index
+     */
+    ComboPrefixIndex getPrefixIndex(boolean ignoreCase)
+    {
+        int kind = ignoreCase ? 1 : 0;
+
+        if (prefixIndexes[kind] == null)
+        {
+            prefixIndexes[kind] = new ComboPrefixIndex(ignoreCase);
+            prefixIndexes[kind].build(items, count);
+        }
+
+        return prefixIndexes[kind];
+    }
+
+    /**
+     * Searches the items starting at the given index for an item that
+     * contains the query.
+     *
+     * @param query the query
+     * @param start the zero-relative index at which to begin the search
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the index of the item or -1
+     */
+    int indexOfContaining(String query, int start, boolean ignoreCase)
+    {
+        if (trigramIndex == null)
+        {
+            trigramIndex = new ComboTrigramIndex();
+            trigramIndex.build(items, count);
+        }
+
+        return trigramIndex.indexOf(items, count, query, Math.max(start, 0), ignoreCase);
+    }
+
+    /**
+     * Drops the prefix and trigram indexes after a change other than an
+     * append. They are rebuilt on next use.
+     */
+    void clearSearchIndexes()
+    {
+        prefixIndexes[0] = prefixIndexes[1] = null;
+        trigramIndex = null;
+    }
+
+    /**
+     * Grows the storage so that it can hold the given number of items.
+     *
+     * @param capacity the required number of items
+     */
+    void ensureCapacity(int capacity)
+    {
+        if (capacity <= items.length)
+        {
+            return;
+        }
+
+        int length = Math.max(capacity, items.length + Math.max(GROW, items.length / 2));
+
+        String[] newItems = new String[length];
+        System.arraycopy(items, 0, newItems, 0, count);
+        items = newItems;
+
+        int[] newImages = new int[length];
+        System.arraycopy(images, 0, newImages, 0, count);
+        images = newImages;
+    }
+
+}
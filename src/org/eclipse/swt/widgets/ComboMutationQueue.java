@@ -0,0 +1,335 @@
+package org.eclipse.swt.widgets;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+
+/**
+ * Changes to a <code>ComboBoxEx</code> that can be made from any thread.
+ * <p>
+ * The changes are queued and applied on the user interface thread in one
+ * batch per run of the event loop, inside <code>beginUpdate()</code> and
+ * <code>endUpdate()</code>. Within a batch, <code>removeAll()</code> discards
+ * the changes queued before it and only the last <code>setText()</code> is
+ * applied. Removing an item that is not in the list is ignored. A removal
+ * cancels the oldest add of the same string queued before it only when the
+ * string is not in the list when the batch is applied, since that add is
+ * then the item the removal would remove; otherwise both are applied.
+ * </p>
+ * <p>
+ * The queue is a linked stack that producers push onto with a
+ * compare-and-set and that the user interface thread takes as a whole, so
+ * producers never block. The producer that finds the queue empty posts the
+ * batch with <code>Display.asyncExec()</code>; all others only push.
+ * Changes queued after the receiver's combo is disposed are discarded.
+ * </p>
+ *
+ * @see ComboBoxEx#getMutationQueue()
+ */
+public class ComboMutationQueue
+{
+
+    static final int ADD = 0;
+    static final int REMOVE = 1;
+    static final int REMOVE_ALL = 2;
+    static final int SET_TEXT = 3;
+
+    /**
+     * A queued change.
+     */
+    static class Node
+    {
+
+        int type;
+        String string;
+        Node next;
+
+        /* Applied unless dropped while collapsing the batch */
+        boolean dropped;
+
+        /* The next add of the same string in the batch */
+        Node nextAdd;
+
+        Node(int type, String string)
+        {
+            this.type = type;
+            this.string = string;
+        }
+
+    }
+
+    ComboBoxEx combo;
+    Display display;
+
+    /* The newest change, linked to the older ones */
+    AtomicReference head = new AtomicReference();
+    volatile boolean disposed;
+
+    Runnable drain = new Runnable()
+    {
+        public void run()
+        {
+            drain();
+        }
+    };
+
+    /**
+     * Creates a queue for the given combo.
+     *
+     * @param combo the combo
+     */
+    ComboMutationQueue(ComboBoxEx combo)
+    {
+        this.combo = combo;
+        this.display = combo.display;
+    }
+
+    /**
+     * Queues adding the argument to the end of the combo's list.
+     * <p>
+     * This method may be called from any thread.
+     * </p>
+     *
+     * @param string the new item
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     */
+    public void add(String string)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        push(new Node(ADD, string));
+    }
+
+    /**
+     * Queues removing the first item of the combo's list that is equal to
+     * the argument.
+     * <p>
+     * This method may be called from any thread.
+     * </p>
+     *
+     * @param string the item to remove
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     */
+    public void remove(String string)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        push(new Node(REMOVE, string));
+    }
+
+    /**
+     * Queues removing all items of the combo's list.
+     * <p>
+     * This method may be called from any thread.
+     * </p>
+     */
+    public void removeAll()
+    {
+        push(new Node(REMOVE_ALL, null));
+    }
+
+    /**
+     * Queues setting the text of the combo.
+     * <p>
+     * This method may be called from any thread.
+     * </p>
+     *
+     * @param string the new text
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     *
+     * @see ComboBoxEx#setText(String)
+     */
+    public void setText(String string)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        push(new Node(SET_TEXT, string));
+    }
+
+    /**
+     * Pushes a change and posts the batch if the queue was empty.
+     */
+    void push(Node node)
+    {
+        if (disposed)
+            return;
+
+        Node next;
+        do
+        {
+            next = (Node) head.get();
+            node.next = next;
+        }
+        while (!head.compareAndSet(next, node));
+
+        if (next == null)
+        {
+            try
+            {
+                display.asyncExec(drain);
+            }
+            catch (SWTException e)
+            {
+                /* The display was disposed */
+                disposed = true;
+            }
+        }
+    }
+
+    /**
+     * Takes the queued changes and applies them. Runs on the user interface
+     * thread.
+     */
+    void drain()
+    {
+        Node node = (Node) head.getAndSet(null);
+        if (disposed || combo.isDisposed() || node == null)
+            return;
+
+        ComboCore core = combo.core;
+        Node first = collapse(reverse(node), core);
+
+        core.beginUpdate();
+        try
+        {
+            for (node = first; node != null; node = node.next)
+            {
+                if (node.dropped)
+                    continue;
+                switch (node.type)
+                {
+                    case ADD:
+                        core.add(node.string, null, -1);
+                        break;
+                    case REMOVE:
+                        int index = core.indexOf(node.string, 0);
+                        if (index != -1)
+                            core.remove(index, true);
+                        break;
+                    case REMOVE_ALL:
+                        core.removeAll();
+                        break;
+                    case SET_TEXT:
+                        combo.setText(node.string);
+                        break;
+                }
+                if (combo.isDisposed())
+                    return;
+            }
+        }
+        finally
+        {
+            if (!combo.isDisposed())
+                core.endUpdate();
+        }
+    }
+
+    /**
+     * Reverses a list of changes, newest first, into the order they were
+     * queued in.
+     */
+    static Node reverse(Node node)
+    {
+        Node first = null;
+        while (node != null)
+        {
+            Node next = node.next;
+            node.next = first;
+            first = node;
+            node = next;
+        }
+        return first;
+    }
+
+    /**
+     * Marks the changes of a batch that do not need to be applied.
+     * <p>
+     * A removal removes the first equal item of the list. When the string is
+     * not in the list before the batch, or the batch removed all items
+     * before, that item is the one added by the oldest add of the string
+     * that was not cancelled yet, so both are dropped. Otherwise the removal
+     * removes an item that was already there and both are applied.
+     * </p>
+     *
+     * @param first the oldest change of the batch
+     * @param core the core the batch is applied to
+     * @return the oldest change of the batch
+     */
+    static Node collapse(Node first, ComboCore core)
+    {
+        /* The oldest and the newest add of each string not cancelled yet */
+        HashMap firstAdds = new HashMap();
+        HashMap lastAdds = new HashMap();
+        Node text = null, start = first;
+        boolean removedAll = false;
+
+        for (Node node = first; node != null; node = node.next)
+        {
+            switch (node.type)
+            {
+                case ADD:
+                    Node last = (Node) lastAdds.put(node.string, node);
+                    if (last != null)
+                        last.nextAdd = node;
+                    else
+                        firstAdds.put(node.string, node);
+                    break;
+                case REMOVE:
+                    Node add = (Node) firstAdds.get(node.string);
+                    if (add != null && (removedAll || core.indexOf(node.string, 0) == -1))
+                    {
+                        add.dropped = node.dropped = true;
+                        if (add.nextAdd != null)
+                        {
+                            firstAdds.put(node.string, add.nextAdd);
+                        }
+                        else
+                        {
+                            firstAdds.remove(node.string);
+                            lastAdds.remove(node.string);
+                        }
+                    }
+                    break;
+                case REMOVE_ALL:
+                    for (Node older = start; older != node; older = older.next)
+                    {
+                        older.dropped = true;
+                    }
+                    start = node;
+                    firstAdds.clear();
+                    lastAdds.clear();
+                    removedAll = true;
+                    text = null;
+                    break;
+                case SET_TEXT:
+                    if (text != null)
+                        text.dropped = true;
+                    text = node;
+                    break;
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Discards the queued changes and all changes queued later.
+     */
+    void dispose()
+    {
+        disposed = true;
+        head.set(null);
+    }
+
+}
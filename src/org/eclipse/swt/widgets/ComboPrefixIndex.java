@@ -0,0 +1,407 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Prefix index over the item texts of a <code>ComboModel</code>.
+ * <p>
+ * The positions of the items are kept in an array sorted by item text, so
+ * all items starting with a prefix form one range that is found with two
+ * binary searches. The first match in list order is the lowest position in
+ * the range; the minimum of every block of <code>BLOCK</code> slots is kept
+ * so that the range is not scanned slot by slot. An index either ignores
+ * case or not, a model keeps one of each when both are used.
+ * </p>
+ * <p>
+ * The texts are not copied, every method takes the current item array of
+ * the model. <code>null</code> items are not indexed.
+ * </p>
+ * <p>
+ * Only appends are applied to a built index. An appended position goes into
+ * a short pending array sorted the same way, which is searched after the
+ * main one since its positions follow all others. It is merged into the
+ * main array once it holds a sixteenth of the positions, so merging costs a
+ * constant number of comparisons per append. The owner drops the index on
+ * any other change and builds it again when needed, as it does for the
+ * trigram index.
+ * </p>
+ */
+class ComboPrefixIndex
+{
+
+    static final int BLOCK = 64;
+
+    /* Appends kept aside before a merge, at least this many or a sixteenth of the index */
+    static final int MAX_PENDING = 1024;
+
+    boolean ignoreCase;
+
+    int[] order = new int[16];
+    int size;
+
+    /* Smallest and largest position of each block, null when stale */
+    int[] blockMins, blockMaxs;
+
+    /* Appended positions sorted like order, all after the positions in order */
+    int[] pending = new int[16];
+    int pendingSize;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param ignoreCase <code>true</code> to order and match texts ignoring
+     *            case
+     */
+    ComboPrefixIndex(boolean ignoreCase)
+    {
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Rebuilds the index from the given items.
+     *
+     * @param items the items
+     * @param count the number of items
+     */
+    void build(String[] items, int count)
+    {
+        order = new int[Math.max(count, 16)];
+        size = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (items[i] != null)
+            {
+                order[size++] = i;
+            }
+        }
+
+        int[] buffer = new int[size];
+        sort(items, order, buffer, 0, size);
+        pendingSize = 0;
+        blockMins = blockMaxs = null;
+    }
+
+    /**
+     * Sorts a range of positions by text with a merge sort, which keeps
+     * positions with equal texts in list order.
+     */
+    void sort(String[] items, int[] order, int[] buffer, int start, int end)
+    {
+        int length = end - start;
+
+        if (length < 8)
+        {
+            for (int i = start + 1; i < end; i++)
+            {
+                int position = order[i];
+                int j = i;
+                while (j > start && compare(items[order[j - 1]], items[position]) > 0)
+                {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = position;
+            }
+            return;
+        }
+
+        int middle = (start + end) >>> 1;
+        sort(items, order, buffer, start, middle);
+        sort(items, order, buffer, middle, end);
+
+        if (compare(items[order[middle - 1]], items[order[middle]]) <= 0)
+        {
+            return;
+        }
+
+        System.arraycopy(order, start, buffer, start, length);
+
+        for (int i = start, left = start, right = middle; i < end; i++)
+        {
+            if (right >= end || (left < middle && compare(items[buffer[left]], items[buffer[right]]) <= 0))
+            {
+                order[i] = buffer[left++];
+            }
+            else
+            {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    static char fold(char c)
+    {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Compares two texts.
+     */
+    int compare(String string1, String string2)
+    {
+        int length1 = string1.length(), length2 = string2.length();
+
+        for (int i = 0, length = Math.min(length1, length2); i < length; i++)
+        {
+            char c1 = string1.charAt(i), c2 = string2.charAt(i);
+            if (c1 != c2)
+            {
+                if (!ignoreCase)
+                {
+                    return c1 - c2;
+                }
+                c1 = fold(c1);
+                c2 = fold(c2);
+                if (c1 != c2)
+                {
+                    return c1 - c2;
+                }
+            }
+        }
+
+        return length1 - length2;
+    }
+
+    /**
+     * Compares the start of a text with a prefix.
+     *
+     * @return 0 if the text starts with the prefix
+     */
+    int comparePrefix(String string, String prefix)
+    {
+        int length = prefix.length();
+
+        if (string.length() < length)
+        {
+            return compare(string, prefix);
+        }
+
+        for (int i = 0; i < length; i++)
+        {
+            char c1 = string.charAt(i), c2 = prefix.charAt(i);
+            if (c1 != c2)
+            {
+                if (!ignoreCase)
+                {
+                    return c1 - c2;
+                }
+                c1 = fold(c1);
+                c2 = fold(c2);
+                if (c1 != c2)
+                {
+                    return c1 - c2;
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the first slot of the order array whose text compares to the
+     * prefix at least (<code>upper == false</code>) or more than
+     * (<code>upper == true</code>) zero.
+     */
+    int search(String[] items, String prefix, boolean upper)
+    {
+        return search(order, size, items, prefix, upper);
+    }
+
+    int search(int[] order, int size, String[] items, String prefix, boolean upper)
+    {
+        int low = 0, high = size;
+
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            int result = comparePrefix(items[order[middle]], prefix);
+
+            if (result < 0 || (upper && result == 0))
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the lowest position at or after <code>start</code> of an item
+     * that starts with the prefix.
+     *
+     * @param items the items
+     * @param prefix the prefix
+     * @param start the lowest position to return
+     * @return the position of the item or -1
+     */
+    int find(String[] items, String prefix, int start)
+    {
+        int low = search(items, prefix, false);
+        int high = search(items, prefix, true);
+        int result = Integer.MAX_VALUE;
+
+        if (blockMins == null)
+        {
+            updateBlocks();
+        }
+
+        for (int i = low; i < high;)
+        {
+            if (i % BLOCK == 0 && i + BLOCK <= high)
+            {
+                int block = i / BLOCK;
+                int min = blockMins[block];
+
+                /* The whole block is skipped unless it may hold a better match */
+                if (min >= result || blockMaxs[block] < start)
+                {
+                    i += BLOCK;
+                    continue;
+                }
+
+                if (min >= start)
+                {
+                    result = min;
+                    i += BLOCK;
+                    continue;
+                }
+            }
+
+            int position = order[i++];
+            if (position >= start && position < result)
+            {
+                result = position;
+            }
+        }
+
+        if (result != Integer.MAX_VALUE || pendingSize == 0)
+        {
+            return result == Integer.MAX_VALUE ? -1 : result;
+        }
+
+        /* The pending positions follow those in order, so they are only searched without a match */
+        high = search(pending, pendingSize, items, prefix, true);
+        for (int i = search(pending, pendingSize, items, prefix, false); i < high; i++)
+        {
+            int position = pending[i];
+            if (position >= start && position < result)
+            {
+                result = position;
+            }
+        }
+
+        return result == Integer.MAX_VALUE ? -1 : result;
+    }
+
+    /**
+     * Recomputes the smallest and largest position of every complete block.
+     */
+    void updateBlocks()
+    {
+        int blocks = size / BLOCK;
+        blockMins = new int[blocks];
+        blockMaxs = new int[blocks];
+
+        for (int block = 0; block < blocks; block++)
+        {
+            int min = Integer.MAX_VALUE, max = -1;
+            for (int i = block * BLOCK, end = i + BLOCK; i < end; i++)
+            {
+                min = Math.min(min, order[i]);
+                max = Math.max(max, order[i]);
+            }
+            blockMins[block] = min;
+            blockMaxs[block] = max;
+        }
+    }
+
+    /**
+     * Indexes the item at the given position, which must be after all
+     * indexed positions.
+     *
+     * @param items the items, including the new item
+     * @param position the position of the new item
+     */
+    void append(String[] items, int position)
+    {
+        String string = items[position];
+        if (string == null)
+        {
+            return;
+        }
+
+        if (pendingSize >= Math.max(MAX_PENDING, size / 16))
+        {
+            merge(items);
+        }
+
+        /* Equal texts keep list order, so the new position goes after them */
+        int low = 0, high = pendingSize;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (compare(items[pending[middle]], string) <= 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        if (pendingSize == pending.length)
+        {
+            int[] newPending = new int[pendingSize * 2];
+            System.arraycopy(pending, 0, newPending, 0, pendingSize);
+            pending = newPending;
+        }
+
+        System.arraycopy(pending, low, pending, low + 1, pendingSize - low);
+        pending[low] = position;
+        pendingSize++;
+    }
+
+    /**
+     * Merges the pending positions into the order array, so that the order
+     * array holds every indexed position.
+     *
+     * @param items the items
+     */
+    void merge(String[] items)
+    {
+        if (pendingSize == 0)
+        {
+            return;
+        }
+
+        int[] newOrder = new int[Math.max(16, (size + pendingSize) * 3 / 2)];
+        int i = 0, j = 0, k = 0;
+
+        while (i < size && j < pendingSize)
+        {
+            /* On equal texts the position in order is the smaller one */
+            if (compare(items[order[i]], items[pending[j]]) <= 0)
+            {
+                newOrder[k++] = order[i++];
+            }
+            else
+            {
+                newOrder[k++] = pending[j++];
+            }
+        }
+
+        System.arraycopy(order, i, newOrder, k, size - i);
+        k += size - i;
+        System.arraycopy(pending, j, newOrder, k, pendingSize - j);
+
+        order = newOrder;
+        size += pendingSize;
+        pendingSize = 0;
+        updateBlocks();
+    }
+
+}
@@ -0,0 +1,342 @@
+package org.eclipse.swt.widgets;
+
+import java.util.ArrayList;
+
+import org.eclipse.swt.SWT;
+
+/**
+ * A list of items shared by several <code>ComboBoxEx</code> instances.
+ * <p>
+ * The items are held in an immutable snapshot: every change copies the
+ * array, so the combos and callers of <code>getItems()</code> never see a
+ * list that is being changed. After a change, the new snapshot is applied to
+ * every bound combo with <code>updateItems()</code>, which only inserts and
+ * deletes the items that differ. Changes made between
+ * <code>beginUpdate()</code> and <code>endUpdate()</code> are applied once, at
+ * the end. All combos are suspended while the snapshot is applied and their
+ * events are sent after the last one was updated.
+ * </p>
+ * <p>
+ * The bound combos share one cache of measured item widths, so each item
+ * text is measured once per font rather than once per combo.
+ * </p>
+ * <p>
+ * The model must be used from the user interface thread of its combos.
+ * </p>
+ *
+ * @see ComboBoxEx#setModel(ComboSharedModel)
+ */
+public class ComboSharedModel
+{
+
+    String[] items = new String[0];
+
+    /* The bound combos */
+    ArrayList combos = new ArrayList();
+
+    ComboTextWidthCache widthCache = new ComboTextWidthCache();
+
+    int updateCount;
+    boolean changed;
+
+    /**
+     * Constructs an empty model.
+     */
+    public ComboSharedModel()
+    {
+    }
+
+    /**
+     * Constructs a model with the given items.
+     *
+     * @param items the items
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the items array is null or
+     *                contains a null item</li>
+     *                </ul>
+     */
+    public ComboSharedModel(String[] items)
+    {
+        this.items = copy(items);
+    }
+
+    static String[] copy(String[] items)
+    {
+        if (items == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        String[] result = new String[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i] == null)
+                SWT.error(SWT.ERROR_NULL_ARGUMENT);
+            result[i] = items[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of items.
+     *
+     * @return the number of items
+     */
+    public int getItemCount()
+    {
+        return items.length;
+    }
+
+    /**
+     * Returns the item at the given, zero-relative index.
+     *
+     * @param index the index of the item
+     * @return the item
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of items minus 1 (inclusive)</li>
+     *                </ul>
+     */
+    public String getItem(int index)
+    {
+        if (!(0 <= index && index < items.length))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        return items[index];
+    }
+
+    /**
+     * Returns a copy of the items.
+     *
+     * @return the items
+     */
+    public String[] getItems()
+    {
+        String[] result = new String[items.length];
+        System.arraycopy(items, 0, result, 0, items.length);
+        return result;
+    }
+
+    /**
+     * Replaces the items.
+     *
+     * @param items the new items
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the items array is null or
+     *                contains a null item</li>
+     *                </ul>
+     */
+    public void setItems(String[] items)
+    {
+        this.items = copy(items);
+        changed();
+    }
+
+    /**
+     * Adds the argument to the end of the list.
+     *
+     * @param string the new item
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                </ul>
+     */
+    public void add(String string)
+    {
+        add(string, items.length);
+    }
+
+    /**
+     * Adds the argument to the list at the given, zero-relative index.
+     *
+     * @param string the new item
+     * @param index the index of the new item
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of items (inclusive)</li>
+     *                </ul>
+     */
+    public void add(String string, int index)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (!(0 <= index && index <= items.length))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        String[] newItems = new String[items.length + 1];
+        System.arraycopy(items, 0, newItems, 0, index);
+        newItems[index] = string;
+        System.arraycopy(items, index, newItems, index + 1, items.length - index);
+        items = newItems;
+        changed();
+    }
+
+    /**
+     * Replaces the item at the given, zero-relative index.
+     *
+     * @param index the index of the item
+     * @param string the new text of the item
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of items minus 1 (inclusive)</li>
+     *                </ul>
+     */
+    public void setItem(int index, String string)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (!(0 <= index && index < items.length))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        String[] newItems = getItems();
+        newItems[index] = string;
+        items = newItems;
+        changed();
+    }
+
+    /**
+     * Removes the item at the given, zero-relative index.
+     *
+     * @param index the index of the item
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of items minus 1 (inclusive)</li>
+     *                </ul>
+     */
+    public void remove(int index)
+    {
+        if (!(0 <= index && index < items.length))
+            SWT.error(SWT.ERROR_INVALID_RANGE);
+        String[] newItems = new String[items.length - 1];
+        System.arraycopy(items, 0, newItems, 0, index);
+        System.arraycopy(items, index + 1, newItems, index, newItems.length - index);
+        items = newItems;
+        changed();
+    }
+
+    /**
+     * Removes the first item that is equal to the argument.
+     *
+     * @param string the item to remove
+     *
+     * @exception IllegalArgumentException <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the string is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the string is not found in
+     *                the list</li>
+     *                </ul>
+     */
+    public void remove(String string)
+    {
+        if (string == null)
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i].equals(string))
+            {
+                remove(i);
+                return;
+            }
+        }
+        SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+    }
+
+    /**
+     * Removes all items.
+     */
+    public void removeAll()
+    {
+        items = new String[0];
+        changed();
+    }
+
+    /**
+     * Starts a batch of changes. The bound combos are updated when the
+     * matching call to <code>endUpdate()</code> is made. Calls may be nested.
+     *
+     * @see #endUpdate()
+     */
+    public void beginUpdate()
+    {
+        updateCount++;
+    }
+
+    /**
+     * Ends a batch of changes started with <code>beginUpdate()</code>. The
+     * outermost call applies the items to the bound combos if they changed.
+     *
+     * @see #beginUpdate()
+     */
+    public void endUpdate()
+    {
+        if (updateCount == 0 || --updateCount > 0)
+            return;
+        if (changed)
+            propagate();
+    }
+
+    void changed()
+    {
+        if (updateCount > 0)
+        {
+            changed = true;
+            return;
+        }
+        propagate();
+    }
+
+    /**
+     * Applies the current snapshot to every bound combo.
+     */
+    void propagate()
+    {
+        changed = false;
+
+        ComboBoxEx[] bound = new ComboBoxEx[combos.size()];
+        combos.toArray(bound);
+        String[] snapshot = items;
+
+        for (int i = 0; i < bound.length; i++)
+        {
+            bound[i].core.beginUpdate();
+        }
+
+        try
+        {
+            for (int i = 0; i < bound.length; i++)
+            {
+                if (!bound[i].isDisposed() && bound[i].sharedModel == this)
+                    bound[i].core.updateItems(snapshot);
+            }
+        }
+        finally
+        {
+            for (int i = 0; i < bound.length; i++)
+            {
+                if (!bound[i].isDisposed())
+                    bound[i].core.endUpdate();
+            }
+        }
+    }
+
+    /**
+     * Binds a combo to the model and shows the items in it.
+     */
+    void bind(ComboBoxEx combo)
+    {
+        combos.add(combo);
+        combo.core.widthCache = widthCache;
+        combo.core.updateItems(items);
+    }
+
+    /**
+     * Unbinds a combo from the model. Its items are kept.
+     */
+    void unbind(ComboBoxEx combo)
+    {
+        combos.remove(combo);
+        combo.core.widthCache = new ComboTextWidthCache();
+    }
+
+}
@@ -0,0 +1,394 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * In-memory stand-in for a COMBOBOXEX32 control.
+ * <p>
+ * The simulator implements the behaviour of the CB_* and CBEM_* messages
+ * used by <code>ComboCore</code>: item storage with callback items, the
+ * selection and the text field that follows it, an image list and a drop-down
+ * width. Text is measured with deterministic metrics: every character is
+ * <code>charWidth</code> pixels wide, characters from the CJK ranges twice as
+ * wide. It has no dependency on the Win32 layer, so the item logic of the
+ * widget can be run, tested and benchmarked on any platform.
+ * </p>
+ * <p>
+ * Besides the total number of calls the simulator counts the calls of each
+ * kind, see the <code>CALL_*</code> constants.
+ * </p>
+ */
+class ComboSimulatedBackend implements ComboBackend
+{
+
+    static final int CALL_INSERT = 0;
+    static final int CALL_DELETE = 1;
+    static final int CALL_SELECTION = 2;
+    static final int CALL_TEXT = 3;
+    static final int CALL_MEASURE = 4;
+    static final int CALL_IMAGE = 5;
+    static final int CALL_REDRAW = 6;
+    static final int CALL_OTHER = 7;
+    static final int CALL_KINDS = 8;
+
+    static final int CALLBACK = -2;
+
+    String[] items = new String[16];
+    int[] images = new int[16];
+    int count;
+
+    int selection = -1;
+    String text = "";
+    boolean readOnly;
+
+    /* Start of the edit selection in the low, end in the high word */
+    int editSelection;
+
+    Object[] imageList = new Object[0];
+    int imageCount;
+
+    int /*long*/ font = 1;
+    int charWidth = 7;
+    int itemHeight = 16;
+
+    int scrollWidth, droppedWidth;
+    int redrawCount, suspended;
+
+    long calls;
+    long[] callsByKind = new long[CALL_KINDS];
+
+    /**
+     * Creates an empty simulated control.
+     *
+     * @param readOnly <code>true</code> to simulate a drop-down list whose
+     *            text always shows the selected item
+     */
+    ComboSimulatedBackend(boolean readOnly)
+    {
+        this.readOnly = readOnly;
+    }
+
+    void call(int kind)
+    {
+        calls++;
+        callsByKind[kind]++;
+    }
+
+    public int insertItem(int index, String string, int image)
+    {
+        call(CALL_INSERT);
+        return insert(index, string, image);
+    }
+
+    public int insertCallbackItem(int index)
+    {
+        call(CALL_INSERT);
+        return insert(index, null, CALLBACK);
+    }
+
+    int insert(int index, String string, int image)
+    {
+        if (index == -1)
+        {
+            index = count;
+        }
+
+        if (index < 0 || index > count)
+        {
+            return ERROR;
+        }
+
+        if (count == items.length)
+        {
+            grow(count * 2);
+        }
+
+        System.arraycopy(items, index, items, index + 1, count - index);
+        System.arraycopy(images, index, images, index + 1, count - index);
+        items[index] = string;
+        images[index] = image;
+        count++;
+
+        if (selection >= index)
+        {
+            selection++;
+        }
+
+        return index;
+    }
+
+    void grow(int capacity)
+    {
+        String[] newItems = new String[capacity];
+        System.arraycopy(items, 0, newItems, 0, count);
+        items = newItems;
+
+        int[] newImages = new int[capacity];
+        System.arraycopy(images, 0, newImages, 0, count);
+        images = newImages;
+    }
+
+    public int deleteItem(int index)
+    {
+        call(CALL_DELETE);
+
+        if (index < 0 || index >= count)
+        {
+            return ERROR;
+        }
+
+        System.arraycopy(items, index + 1, items, index, count - index - 1);
+        System.arraycopy(images, index + 1, images, index, count - index - 1);
+        items[--count] = null;
+
+        if (selection == index)
+        {
+            /* The edit control of an editable combo keeps its text */
+            selection = -1;
+            if (readOnly)
+            {
+                text = "";
+            }
+        }
+        else if (selection > index)
+        {
+            selection--;
+        }
+
+        return count;
+    }
+
+    public void deleteAll()
+    {
+        call(CALL_DELETE);
+        items = new String[16];
+        images = new int[16];
+        count = 0;
+        selection = -1;
+        text = "";
+        editSelection = 0;
+    }
+
+    public void initStorage(int count, int charCount)
+    {
+        call(CALL_OTHER);
+
+        if (this.count + count > items.length)
+        {
+            grow(this.count + count);
+        }
+    }
+
+    public int getSelection()
+    {
+        call(CALL_SELECTION);
+        return selection;
+    }
+
+    public int setSelection(int index)
+    {
+        call(CALL_SELECTION);
+
+        if (index < 0 || index >= count)
+        {
+            selection = -1;
+            text = "";
+            return ERROR;
+        }
+
+        selection = index;
+        text = items[index] != null ? items[index] : "";
+        /* Selecting an item selects the whole text */
+        editSelection = text.length() << 16;
+        return index;
+    }
+
+    public int getTextLength()
+    {
+        call(CALL_TEXT);
+        return text.length();
+    }
+
+    public String getText()
+    {
+        call(CALL_TEXT);
+        return text;
+    }
+
+    public boolean setText(String string)
+    {
+        call(CALL_TEXT);
+
+        if (readOnly)
+        {
+            return false;
+        }
+
+        text = string;
+        editSelection = 0;
+        return true;
+    }
+
+    public int getEditSelection()
+    {
+        call(CALL_TEXT);
+        return editSelection;
+    }
+
+    public void setEditSelection(int selection)
+    {
+        call(CALL_TEXT);
+        editSelection = selection;
+    }
+
+    public int /*long*/ getFont()
+    {
+        call(CALL_OTHER);
+        return font;
+    }
+
+    public int measureText(String string)
+    {
+        call(CALL_MEASURE);
+
+        int width = 0;
+        for (int i = 0, length = string.length(); i < length; i++)
+        {
+            char c = string.charAt(i);
+            width += (c >= 0x1100 && c <= 0xFFDC) ? charWidth * 2 : charWidth;
+        }
+
+        return width;
+    }
+
+    public void endMeasure()
+    {
+    }
+
+    public int getItemHeight()
+    {
+        call(CALL_OTHER);
+        return itemHeight;
+    }
+
+    public void setImage(int index, Object image)
+    {
+        call(CALL_IMAGE);
+
+        if (index >= imageCount)
+        {
+            if (imageCount == imageList.length)
+            {
+                Object[] newImageList = new Object[Math.max(4, imageCount * 2)];
+                System.arraycopy(imageList, 0, newImageList, 0, imageCount);
+                imageList = newImageList;
+            }
+
+            index = imageCount++;
+        }
+
+        imageList[index] = image;
+    }
+
+    public void releaseImages()
+    {
+        if (imageCount == 0)
+        {
+            return;
+        }
+
+        call(CALL_IMAGE);
+        imageList = new Object[0];
+        imageCount = 0;
+    }
+
+    public void setScrollWidth(int scrollWidth, int count)
+    {
+        call(CALL_OTHER);
+        this.scrollWidth = scrollWidth;
+        this.droppedWidth = scrollWidth;
+    }
+
+    public boolean suspendRedraw()
+    {
+        call(CALL_REDRAW);
+
+        if (suspended > 0)
+        {
+            return false;
+        }
+
+        suspended++;
+        return true;
+    }
+
+    public void resumeRedraw()
+    {
+        call(CALL_REDRAW);
+
+        if (suspended > 0 && --suspended == 0)
+        {
+            redrawCount++;
+        }
+    }
+
+    public void redraw()
+    {
+        call(CALL_REDRAW);
+
+        if (suspended == 0)
+        {
+            redrawCount++;
+        }
+    }
+
+    public void redrawList()
+    {
+        redraw();
+    }
+
+    /**
+     * Simulates a change of the font of the control.
+     *
+     * @param font the new font handle
+     * @param charWidth the width of a character in the new font
+     */
+    void setFont(int /*long*/ font, int charWidth)
+    {
+        this.font = font;
+        this.charWidth = charWidth;
+    }
+
+    /**
+     * Returns the number of calls of the given kind.
+     *
+     * @param kind one of the <code>CALL_*</code> constants
+     * @return the number of calls
+     */
+    long getCallCount(int kind)
+    {
+        return callsByKind[kind];
+    }
+
+    public long getCallCount()
+    {
+        return calls;
+    }
+
+    public void resetCallCount()
+    {
+        calls = 0;
+
+        for (int i = 0; i < CALL_KINDS; i++)
+        {
+            callsByKind[i] = 0;
+        }
+    }
+
+    public void dispose()
+    {
+        items = null;
+        images = null;
+        imageList = null;
+        count = imageCount = 0;
+    }
+
+}
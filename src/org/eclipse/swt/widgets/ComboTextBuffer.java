@@ -0,0 +1,89 @@
+package org.eclipse.swt.widgets;
+
+import org.eclipse.swt.internal.win32.OS;
+import org.eclipse.swt.internal.win32.TCHAR;
+
+/**
+ * Grow-only scratch <code>TCHAR</code> of a <code>ComboBoxEx</code>.
+ * <p>
+ * Text reads and writes borrow the buffer with <code>acquire()</code> and
+ * give it back with <code>release()</code>, so steady-state reads and
+ * measurements do not allocate a <code>TCHAR</code> per call. The buffer is
+ * confined to the UI thread. A call that needs a buffer while it is borrowed,
+ * for example from a listener that runs while the text is held across a
+ * <code>WM_SIZE</code>, gets a fresh <code>TCHAR</code> instead.
+ * </p>
+ * <p>
+ * Only the Unicode path is allocation free; converting a string to a
+ * multi-byte code page always allocates.
+ * </p>
+ */
+class ComboTextBuffer
+{
+
+    static final int MIN_LENGTH = 64;
+
+    TCHAR buffer;
+    boolean locked;
+
+    /**
+     * Borrows a buffer that holds at least the given number of characters.
+     *
+     * @param codePage the code page of the text
+     * @param length the number of characters, including the terminator
+     * @return the buffer
+     */
+    TCHAR acquire(int codePage, int length)
+    {
+        if (locked)
+        {
+            return new TCHAR(codePage, length);
+        }
+
+        if (buffer == null || buffer.length() < length || buffer.codePage != codePage)
+        {
+            int capacity = buffer != null ? buffer.length() * 2 : MIN_LENGTH;
+            buffer = new TCHAR(codePage, Math.max(length, capacity));
+        }
+
+        locked = true;
+        return buffer;
+    }
+
+    /**
+     * Borrows a buffer holding the given string followed by a terminator.
+     *
+     * @param codePage the code page of the text
+     * @param string the string
+     * @return the buffer
+     */
+    TCHAR acquire(int codePage, String string)
+    {
+        if (!OS.IsUnicode)
+        {
+            return new TCHAR(codePage, string, true);
+        }
+
+        int length = string.length();
+        TCHAR result = acquire(codePage, length + 1);
+        string.getChars(0, length, result.chars, 0);
+        result.chars[length] = 0;
+
+        return result;
+    }
+
+    /**
+     * Gives a borrowed buffer back. Buffers that were allocated because the
+     * scratch buffer was borrowed are ignored.
+     *
+     * @param tchar the buffer
+     */
+    void release(TCHAR tchar)
+    {
+        if (tchar == buffer)
+        {
+            locked = false;
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Hash index from item text to the sorted positions of the items with that
+ * text.
+ * <p>
+ * The table uses open addressing with linear probing. A text that occurs once
+ * keeps its position inline, duplicates keep a sorted array of positions, so
+ * exact lookups including empty and duplicate items take constant time.
+ * Positions are not moved when an item is inserted or removed in the middle
+ * of the list; the owner rebuilds the index instead, see
+ * <code>ComboModel</code>.
+ * </p>
+ */
+class ComboTextIndex
+{
+
+    String[] keys;
+    int[] counts;
+    int[] firsts;
+    int[][] positions;
+    int size;
+
+    /**
+     * Creates an empty index.
+     */
+    ComboTextIndex()
+    {
+        clear();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear()
+    {
+        allocate(16);
+    }
+
+    /**
+     * Allocates an empty table with the given capacity, a power of two.
+     *
+     * @param capacity the number of slots
+     */
+    void allocate(int capacity)
+    {
+        keys = new String[capacity];
+        counts = new int[capacity];
+        firsts = new int[capacity];
+        positions = new int[capacity][];
+        size = 0;
+    }
+
+    /**
+     * Rebuilds the index from the given items. <code>null</code> items are
+     * skipped.
+     *
+     * @param items the items
+     * @param count the number of items
+     */
+    void build(String[] items, int count)
+    {
+        int capacity = 16;
+        while (capacity < count * 2)
+        {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+
+        for (int i = 0; i < count; i++)
+        {
+            if (items[i] != null)
+            {
+                add(items[i], i);
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the given text, or the empty slot where it would be
+     * inserted.
+     *
+     * @param key the text
+     * @return the slot
+     */
+    int slot(String key)
+    {
+        int mask = keys.length - 1;
+        int slot = mix(key.hashCode()) & mask;
+
+        while (keys[slot] != null && !keys[slot].equals(key))
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    static int mix(int hash)
+    {
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+
+    /**
+     * Adds a position for the given text.
+     *
+     * @param key the text
+     * @param position the position of the item
+     */
+    void add(String key, int position)
+    {
+        if ((size + 1) * 2 > keys.length)
+        {
+            rehash(keys.length * 2);
+        }
+
+        int slot = slot(key);
+
+        if (keys[slot] == null)
+        {
+            keys[slot] = key;
+            counts[slot] = 1;
+            firsts[slot] = position;
+            size++;
+            return;
+        }
+
+        int count = counts[slot];
+        int[] list = positions[slot];
+
+        if (list == null)
+        {
+            list = positions[slot] = new int[4];
+            list[0] = firsts[slot];
+        }
+        else if (count == list.length)
+        {
+            int[] newList = new int[count * 2];
+            System.arraycopy(list, 0, newList, 0, count);
+            list = positions[slot] = newList;
+        }
+
+        int insert = search(list, count, position);
+        System.arraycopy(list, insert, list, insert + 1, count - insert);
+        list[insert] = position;
+
+        counts[slot] = count + 1;
+        firsts[slot] = list[0];
+    }
+
+    /**
+     * Removes a position of the given text.
+     *
+     * @param key the text
+     * @param position the position of the item
+     */
+    void remove(String key, int position)
+    {
+        int slot = slot(key);
+
+        if (keys[slot] == null)
+        {
+            return;
+        }
+
+        int count = counts[slot];
+
+        if (count == 1)
+        {
+            if (firsts[slot] == position)
+            {
+                delete(slot);
+            }
+
+            return;
+        }
+
+        int[] list = positions[slot];
+        int index = search(list, count, position);
+
+        if (index == count || list[index] != position)
+        {
+            return;
+        }
+
+        System.arraycopy(list, index + 1, list, index, count - index - 1);
+        counts[slot] = --count;
+        firsts[slot] = list[0];
+
+        if (count == 1)
+        {
+            positions[slot] = null;
+        }
+    }
+
+    /**
+     * Returns the first position of the given text at or after the start
+     * position.
+     *
+     * @param key the text
+     * @param start the start position
+     * @return the position or -1
+     */
+    int indexOf(String key, int start)
+    {
+        int slot = slot(key);
+
+        if (keys[slot] == null)
+        {
+            return -1;
+        }
+
+        if (firsts[slot] >= start)
+        {
+            return firsts[slot];
+        }
+
+        int count = counts[slot];
+        if (count == 1)
+        {
+            return -1;
+        }
+
+        int[] list = positions[slot];
+        int index = search(list, count, start);
+
+        return index < count ? list[index] : -1;
+    }
+
+    /**
+     * Returns the number of items with the given text.
+     *
+     * @param key the text
+     * @return the number of items
+     */
+    int count(String key)
+    {
+        int slot = slot(key);
+        return keys[slot] != null ? counts[slot] : 0;
+    }
+
+    /**
+     * Returns the index of the first position that is not smaller than the
+     * given position.
+     */
+    static int search(int[] list, int count, int position)
+    {
+        int low = 0, high = count;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (list[mid] < position)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Deletes a slot and moves the following entries of its probe sequence
+     * back, so that no tombstones are needed.
+     *
+     * @param slot the slot to delete
+     */
+    void delete(int slot)
+    {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+
+        while (keys[next] != null)
+        {
+            int home = mix(keys[next].hashCode()) & mask;
+
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                firsts[hole] = firsts[next];
+                positions[hole] = positions[next];
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        keys[hole] = null;
+        counts[hole] = 0;
+        positions[hole] = null;
+        size--;
+    }
+
+    /**
+     * Moves all entries into a table with the given capacity.
+     *
+     * @param capacity the new number of slots, a power of two
+     */
+    void rehash(int capacity)
+    {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int[] oldFirsts = firsts;
+        int[][] oldPositions = positions;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != null)
+            {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                firsts[slot] = oldFirsts[i];
+                positions[slot] = oldPositions[i];
+                size++;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Cache of measured text widths keyed by font handle and text.
+ * <p>
+ * Each font has its own open addressing table from text to width. Only a few
+ * fonts are kept; when another font is measured the least recently added font
+ * is dropped. A table that grows beyond <code>MAX_ENTRIES</code> is cleared,
+ * which bounds the memory held for texts of items that were removed long ago.
+ * </p>
+ * <p>
+ * Hits and misses are counted so that the effect of the cache can be checked.
+ * </p>
+ */
+class ComboTextWidthCache
+{
+
+    static final int MAX_FONTS = 4;
+    static final int MAX_ENTRIES = 1 << 18;
+
+    int /*long*/[] fonts = new int /*long*/[MAX_FONTS];
+    String[][] keys = new String[MAX_FONTS][];
+    int[][] widths = new int[MAX_FONTS][];
+    int[] sizes = new int[MAX_FONTS];
+    int fontCount, nextFont;
+
+    long hits, misses;
+
+    /**
+     * Returns the cached width of the text in the given font.
+     *
+     * @param font the font handle
+     * @param text the text
+     * @return the width or -1 if the text has not been measured
+     */
+    int get(int /*long*/ font, String text)
+    {
+        int table = table(font);
+
+        if (table != -1)
+        {
+            String[] tableKeys = keys[table];
+            int slot = slot(tableKeys, text);
+
+            if (tableKeys[slot] != null)
+            {
+                hits++;
+                return widths[table][slot];
+            }
+        }
+
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Stores the width of the text in the given font.
+     *
+     * @param font the font handle
+     * @param text the text
+     * @param width the width
+     */
+    void put(int /*long*/ font, String text, int width)
+    {
+        int table = table(font);
+
+        if (table == -1)
+        {
+            table = nextFont;
+            nextFont = (nextFont + 1) % MAX_FONTS;
+            fontCount = Math.min(fontCount + 1, MAX_FONTS);
+            fonts[table] = font;
+            allocate(table, 64);
+        }
+
+        if ((sizes[table] + 1) * 2 > keys[table].length)
+        {
+            if (sizes[table] >= MAX_ENTRIES)
+            {
+                allocate(table, 64);
+            }
+            else
+            {
+                rehash(table, keys[table].length * 2);
+            }
+        }
+
+        String[] tableKeys = keys[table];
+        int slot = slot(tableKeys, text);
+
+        if (tableKeys[slot] == null)
+        {
+            tableKeys[slot] = text;
+            sizes[table]++;
+        }
+
+        widths[table][slot] = width;
+    }
+
+    /**
+     * Forgets all widths measured in the given font.
+     *
+     * @param font the font handle
+     */
+    void clear(int /*long*/ font)
+    {
+        int table = table(font);
+
+        if (table != -1)
+        {
+            allocate(table, 64);
+        }
+    }
+
+    /**
+     * Forgets all widths.
+     */
+    void clear()
+    {
+        for (int i = 0; i < MAX_FONTS; i++)
+        {
+            keys[i] = null;
+            widths[i] = null;
+            sizes[i] = 0;
+            fonts[i] = 0;
+        }
+
+        fontCount = nextFont = 0;
+    }
+
+    /**
+     * Returns the number of lookups that found a width.
+     *
+     * @return the number of hits
+     */
+    long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a width.
+     *
+     * @return the number of misses
+     */
+    long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    void resetCounters()
+    {
+        hits = misses = 0;
+    }
+
+    int table(int /*long*/ font)
+    {
+        for (int i = 0; i < fontCount; i++)
+        {
+            if (fonts[i] == font && keys[i] != null)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    void allocate(int table, int capacity)
+    {
+        keys[table] = new String[capacity];
+        widths[table] = new int[capacity];
+        sizes[table] = 0;
+    }
+
+    void rehash(int table, int capacity)
+    {
+        String[] oldKeys = keys[table];
+        int[] oldWidths = widths[table];
+
+        allocate(table, capacity);
+
+        String[] tableKeys = keys[table];
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != null)
+            {
+                int slot = slot(tableKeys, oldKeys[i]);
+                tableKeys[slot] = oldKeys[i];
+                widths[table][slot] = oldWidths[i];
+                sizes[table]++;
+            }
+        }
+    }
+
+    static int slot(String[] tableKeys, String text)
+    {
+        int mask = tableKeys.length - 1;
+        int slot = ComboTextIndex.mix(text.hashCode()) & mask;
+
+        while (tableKeys[slot] != null && !tableKeys[slot].equals(text))
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+}
@@ -0,0 +1,435 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Inverted index from the trigrams of the item texts to the positions of the
+ * items that contain them.
+ * <p>
+ * Characters are folded to one case, three of them are packed into a
+ * <code>long</code> key. Each key has a posting list of item positions in
+ * ascending order, stored in a plain <code>int[]</code>. A query of three or
+ * more characters intersects the posting lists of its trigrams, starting
+ * with the shortest, and only the remaining candidates are compared with the
+ * query. Shorter queries scan the items.
+ * </p>
+ * <p>
+ * Items appended at the end of the list are added to the index; any other
+ * change requires a new index. <code>null</code> items are not indexed.
+ * </p>
+ */
+class ComboTrigramIndex
+{
+
+    static final long EMPTY = -1L;
+
+    /* Items or candidates between two checks of a cancel check */
+    static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Tells a long running build or search to stop.
+     */
+    interface CancelCheck
+    {
+
+        /**
+         * Returns whether the work should stop.
+         *
+         * @return <code>true</code> to stop
+         */
+        boolean isCancelled();
+
+    }
+
+    long[] keys;
+    int[][] postings;
+    int[] sizes;
+    int size;
+
+    /**
+     * Creates an empty index.
+     */
+    ComboTrigramIndex()
+    {
+        allocate(256);
+    }
+
+    void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        postings = new int[capacity][];
+        sizes = new int[capacity];
+        size = 0;
+
+        for (int i = 0; i < capacity; i++)
+        {
+            keys[i] = EMPTY;
+        }
+    }
+
+    /**
+     * Indexes the given items.
+     *
+     * @param items the items
+     * @param count the number of items
+     */
+    void build(String[] items, int count)
+    {
+        build(items, 0, count, null);
+    }
+
+    /**
+     * Indexes the items from <code>start</code> on, which must be after all
+     * indexed items, until <code>count</code> or until the cancel check
+     * tells to stop. A build that was stopped is resumed by calling this
+     * method again with the returned position.
+     *
+     * @param items the items
+     * @param start the position of the first item to index
+     * @param count the number of items
+     * @param check the cancel check or <code>null</code>
+     * @return the position after the last indexed item
+     */
+    int build(String[] items, int start, int count, CancelCheck check)
+    {
+        for (int i = start; i < count; i++)
+        {
+            if (check != null && (i - start) % CHECK_INTERVAL == 0 && i > start && check.isCancelled())
+            {
+                return i;
+            }
+            if (items[i] != null)
+            {
+                add(items[i], i);
+            }
+        }
+
+        return count;
+    }
+
+    static char fold(char c)
+    {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Folds every character of the text to one case the way the index and
+     * <code>contains()</code> do, independent of the default locale.
+     *
+     * @param string the text
+     * @return the folded text
+     */
+    static String fold(String string)
+    {
+        char[] chars = new char[string.length()];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = fold(string.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    static long key(String string, int index)
+    {
+        return ((long) fold(string.charAt(index)) << 32) | ((long) fold(string.charAt(index + 1)) << 16)
+            | fold(string.charAt(index + 2));
+    }
+
+    int slot(long key)
+    {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash >>> 32) & mask;
+
+        while (keys[slot] != EMPTY && keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Indexes the item at the given position, which must be after all
+     * indexed items.
+     *
+     * @param string the text of the item
+     * @param position the position of the item
+     */
+    void add(String string, int position)
+    {
+        for (int i = 0, end = string.length() - 2; i < end; i++)
+        {
+            long key = key(string, i);
+            int slot = slot(key);
+
+            if (keys[slot] == EMPTY)
+            {
+                keys[slot] = key;
+                postings[slot] = new int[4];
+                size++;
+            }
+            else if (postings[slot][sizes[slot] - 1] == position)
+            {
+                /* The trigram occurs more than once in the item */
+                continue;
+            }
+
+            if (sizes[slot] == postings[slot].length)
+            {
+                int[] newPostings = new int[sizes[slot] * 2];
+                System.arraycopy(postings[slot], 0, newPostings, 0, sizes[slot]);
+                postings[slot] = newPostings;
+            }
+
+            postings[slot][sizes[slot]++] = position;
+
+            if (size * 2 > keys.length)
+            {
+                rehash();
+            }
+        }
+    }
+
+    void rehash()
+    {
+        long[] oldKeys = keys;
+        int[][] oldPostings = postings;
+        int[] oldSizes = sizes;
+
+        allocate(oldKeys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != EMPTY)
+            {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                postings[slot] = oldPostings[i];
+                sizes[slot] = oldSizes[i];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Returns the lowest position at or after <code>start</code> of an item
+     * that contains the query.
+     *
+     * @param items the items
+     * @param count the number of items
+     * @param query the query
+     * @param start the lowest position to return
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return the position or -1
+     */
+    int indexOf(String[] items, int count, String query, int start, boolean ignoreCase)
+    {
+        int[] result = find(items, count, query, start, ignoreCase, 1);
+        return result.length > 0 ? result[0] : -1;
+    }
+
+    /**
+     * Returns the positions at or after <code>start</code> of the items that
+     * contain the query, in ascending order.
+     *
+     * @param items the items
+     * @param count the number of items
+     * @param query the query
+     * @param start the lowest position to return
+     * @param ignoreCase <code>true</code> to ignore case
+     * @param limit the maximum number of positions to return
+     * @return the positions
+     */
+    int[] find(String[] items, int count, String query, int start, boolean ignoreCase, int limit)
+    {
+        return find(items, count, query, start, ignoreCase, limit, null);
+    }
+
+    /**
+     * Returns the positions at or after <code>start</code> of the items that
+     * contain the query, in ascending order, or <code>null</code> if the
+     * cancel check told to stop.
+     *
+     * @param items the items
+     * @param count the number of items
+     * @param query the query
+     * @param start the lowest position to return
+     * @param ignoreCase <code>true</code> to ignore case
+     * @param limit the maximum number of positions to return
+     * @param check the cancel check or <code>null</code>
+     * @return the positions or <code>null</code>
+     */
+    int[] find(String[] items, int count, String query, int start, boolean ignoreCase, int limit, CancelCheck check)
+    {
+        int[] result = new int[Math.min(limit, 16)];
+        int resultCount = 0;
+
+        int length = query.length();
+        if (length < 3)
+        {
+            for (int i = start; i < count && resultCount < limit; i++)
+            {
+                if (check != null && (i - start) % CHECK_INTERVAL == 0 && check.isCancelled())
+                {
+                    return null;
+                }
+                if (items[i] != null && contains(items[i], query, ignoreCase))
+                {
+                    result = append(result, resultCount++, i);
+                }
+            }
+
+            return trim(result, resultCount);
+        }
+
+        /* The posting lists of the trigrams, the shortest first */
+        int listCount = length - 2;
+        int[][] lists = new int[listCount][];
+        int[] listSizes = new int[listCount];
+        for (int i = 0; i < listCount; i++)
+        {
+            int slot = slot(key(query, i));
+            if (keys[slot] == EMPTY)
+            {
+                return new int[0];
+            }
+            lists[i] = postings[slot];
+            listSizes[i] = sizes[slot];
+            for (int j = i; j > 0 && listSizes[j] < listSizes[j - 1]; j--)
+            {
+                int[] list = lists[j];
+                lists[j] = lists[j - 1];
+                lists[j - 1] = list;
+                int listSize = listSizes[j];
+                listSizes[j] = listSizes[j - 1];
+                listSizes[j - 1] = listSize;
+            }
+        }
+
+        int[] cursors = new int[listCount];
+        int first = search(lists[0], 0, listSizes[0], start);
+
+        candidates: for (int i = first; i < listSizes[0] && resultCount < limit; i++)
+        {
+            if (check != null && (i - first) % CHECK_INTERVAL == 0 && check.isCancelled())
+            {
+                return null;
+            }
+
+            int position = lists[0][i];
+
+            for (int j = 1; j < listCount; j++)
+            {
+                cursors[j] = search(lists[j], cursors[j], listSizes[j], position);
+                if (cursors[j] == listSizes[j])
+                {
+                    break candidates;
+                }
+                if (lists[j][cursors[j]] != position)
+                {
+                    continue candidates;
+                }
+            }
+
+            if (position < count && items[position] != null && contains(items[position], query, ignoreCase))
+            {
+                result = append(result, resultCount++, position);
+            }
+        }
+
+        return trim(result, resultCount);
+    }
+
+    /**
+     * Returns the first index in <code>[from, to)</code> of a sorted list
+     * whose value is at least the given value, searching exponentially from
+     * <code>from</code>.
+     */
+    static int search(int[] list, int from, int to, int value)
+    {
+        int step = 1, low = from, high = from;
+
+        while (high < to && list[high] < value)
+        {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+
+        high = Math.min(high, to);
+
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (list[middle] < value)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    static int[] append(int[] array, int index, int value)
+    {
+        if (index == array.length)
+        {
+            int[] newArray = new int[array.length * 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            array = newArray;
+        }
+
+        array[index] = value;
+        return array;
+    }
+
+    static int[] trim(int[] array, int length)
+    {
+        if (array.length == length)
+        {
+            return array;
+        }
+
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Returns whether the text contains the query.
+     *
+     * @param string the text
+     * @param query the query
+     * @param ignoreCase <code>true</code> to ignore case
+     * @return <code>true</code> if the text contains the query
+     */
+    static boolean contains(String string, String query, boolean ignoreCase)
+    {
+        if (!ignoreCase)
+        {
+            return string.indexOf(query) != -1;
+        }
+
+        int length = query.length();
+
+        outer: for (int i = 0, end = string.length() - length; i <= end; i++)
+        {
+            for (int j = 0; j < length; j++)
+            {
+                char c1 = string.charAt(i + j), c2 = query.charAt(j);
+                if (c1 != c2 && fold(c1) != fold(c2))
+                {
+                    continue outer;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,244 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Usage counters of item texts, for ranking suggestions.
+ * <p>
+ * Every use of a text increments its count and stamps it with a logical
+ * clock. Texts are ranked by count, then by the time of their last use, so
+ * the most frequently used text comes first and the most recently used one
+ * wins a tie. Counters are kept per text rather than per position, so they
+ * survive inserting and removing items.
+ * </p>
+ * <p>
+ * The table uses open addressing with linear probing over parallel primitive
+ * arrays; the strings are the only objects it holds.
+ * </p>
+ */
+class ComboUsageStats
+{
+
+    String[] keys;
+    int[] counts;
+    int[] stamps;
+    int size;
+    int clock;
+
+    /**
+     * Creates empty counters.
+     */
+    ComboUsageStats()
+    {
+        clear();
+    }
+
+    /**
+     * Forgets all uses.
+     */
+    void clear()
+    {
+        keys = new String[16];
+        counts = new int[16];
+        stamps = new int[16];
+        size = 0;
+        clock = 0;
+    }
+
+    int slot(String key)
+    {
+        int mask = keys.length - 1;
+        int slot = (key.hashCode() * 0x9E3779B9) >>> 16 & mask;
+
+        while (keys[slot] != null && !keys[slot].equals(key))
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Records a use of the given text.
+     *
+     * @param key the text
+     */
+    void record(String key)
+    {
+        if (size * 2 >= keys.length)
+        {
+            rehash();
+        }
+
+        int slot = slot(key);
+
+        if (keys[slot] == null)
+        {
+            keys[slot] = key;
+            size++;
+        }
+
+        counts[slot]++;
+        stamps[slot] = ++clock;
+    }
+
+    void rehash()
+    {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int[] oldStamps = stamps;
+
+        keys = new String[oldKeys.length * 2];
+        counts = new int[keys.length];
+        stamps = new int[keys.length];
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != null)
+            {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                stamps[slot] = oldStamps[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of uses of the given text.
+     *
+     * @param key the text
+     * @return the number of uses
+     */
+    int getCount(String key)
+    {
+        int slot = slot(key);
+        return keys[slot] != null ? counts[slot] : 0;
+    }
+
+    /**
+     * Returns the rank of the given text: the count in the high and the time
+     * of the last use in the low half. Texts that were never used rank 0.
+     *
+     * @param key the text
+     * @return the rank
+     */
+    long getScore(String key)
+    {
+        if (size == 0)
+        {
+            return 0;
+        }
+
+        int slot = slot(key);
+        return keys[slot] != null ? ((long) counts[slot] << 32) | (stamps[slot] & 0xFFFFFFFFL) : 0;
+    }
+
+    /**
+     * Returns the <code>k</code> best ranked of the given positions, best
+     * first. Positions with equal rank are returned in ascending order. A
+     * bounded min-heap keeps the best <code>k</code> seen so far, so the cost
+     * is O(n log k) for n candidates.
+     *
+     * @param items the items
+     * @param candidates the candidate positions
+     * @param start the index of the first candidate
+     * @param end the index after the last candidate
+     * @param k the maximum number of positions to return
+     * @return the best ranked positions
+     */
+    int[] top(String[] items, int[] candidates, int start, int end, int k)
+    {
+        k = Math.min(k, end - start);
+        if (k <= 0)
+        {
+            return new int[0];
+        }
+
+        long[] heapScores = new long[k];
+        int[] heapPositions = new int[k];
+        int heapSize = 0;
+
+        for (int i = start; i < end; i++)
+        {
+            int position = candidates[i];
+            long score = getScore(items[position]);
+
+            if (heapSize < k)
+            {
+                /* Sift up */
+                int child = heapSize++;
+                while (child > 0)
+                {
+                    int parent = (child - 1) >>> 1;
+                    if (!worse(score, position, heapScores[parent], heapPositions[parent]))
+                    {
+                        break;
+                    }
+                    heapScores[child] = heapScores[parent];
+                    heapPositions[child] = heapPositions[parent];
+                    child = parent;
+                }
+                heapScores[child] = score;
+                heapPositions[child] = position;
+            }
+            else if (worse(heapScores[0], heapPositions[0], score, position))
+            {
+                siftDown(heapScores, heapPositions, heapSize, score, position);
+            }
+        }
+
+        /* Pop the worst until the heap is empty, filling the result backwards */
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--)
+        {
+            result[i] = heapPositions[0];
+            heapSize--;
+            if (heapSize > 0)
+            {
+                siftDown(heapScores, heapPositions, heapSize, heapScores[heapSize], heapPositions[heapSize]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Replaces the root of the heap with the given entry and restores the
+     * heap order.
+     */
+    static void siftDown(long[] scores, int[] positions, int size, long score, int position)
+    {
+        int parent = 0;
+
+        while (true)
+        {
+            int child = parent * 2 + 1;
+            if (child >= size)
+            {
+                break;
+            }
+            if (child + 1 < size && worse(scores[child + 1], positions[child + 1], scores[child], positions[child]))
+            {
+                child++;
+            }
+            if (!worse(scores[child], positions[child], score, position))
+            {
+                break;
+            }
+            scores[parent] = scores[child];
+            positions[parent] = positions[child];
+            parent = child;
+        }
+
+        scores[parent] = score;
+        positions[parent] = position;
+    }
+
+    /**
+     * Returns whether the first entry ranks below the second one.
+     */
+    static boolean worse(long score1, int position1, long score2, int position2)
+    {
+        return score1 < score2 || (score1 == score2 && position1 > position2);
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Item store of a <code>ComboBoxEx</code> created with the
+ * <code>SWT.VIRTUAL</code> style.
+ * <p>
+ * Only the number of items is known up front. The text and image of an item
+ * are requested from a <code>Provider</code> the first time they are needed
+ * and cached afterwards. A <code>null</code> text marks an item that has not
+ * been requested yet.
+ * </p>
+ * <p>
+ * Searching only considers items that have already been requested.
+ * </p>
+ */
+class ComboVirtualModel extends ComboModel
+{
+
+    /**
+     * Supplies the contents of items on demand.
+     */
+    interface Provider
+    {
+
+        /**
+         * Called the first time the item at the given index is needed.
+         * Implementations store the contents with
+         * <code>setItem(int, String, int)</code>; an item that is not set
+         * remains empty.
+         *
+         * @param model the model that requests the item
+         * @param index the index of the item
+         */
+        void resolve(ComboVirtualModel model, int index);
+
+    }
+
+    Provider provider;
+
+    /**
+     * Creates an empty model.
+     *
+     * @param provider the provider of item contents
+     */
+    ComboVirtualModel(Provider provider)
+    {
+        this.provider = provider;
+    }
+
+    String getItem(int index)
+    {
+        if (items[index] == null)
+        {
+            resolve(index);
+        }
+
+        return items[index];
+    }
+
+    int getImage(int index)
+    {
+        if (items[index] == null)
+        {
+            resolve(index);
+        }
+
+        return images[index];
+    }
+
+    String[] getItems()
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (items[i] == null)
+            {
+                resolve(i);
+            }
+        }
+
+        return super.getItems();
+    }
+
+    void getItems(int start, int length, String[] dest)
+    {
+        for (int i = start; i < start + length; i++)
+        {
+            if (items[i] == null)
+            {
+                resolve(i);
+            }
+        }
+
+        super.getItems(start, length, dest);
+    }
+
+    /**
+     * Returns whether the contents of the item at the given index have
+     * already been requested.
+     *
+     * @param index the index of the item
+     * @return <code>true</code> if the item is cached
+     */
+    boolean isResolved(int index)
+    {
+        return items[index] != null;
+    }
+
+    /**
+     * Requests the contents of the item at the given index from the provider.
+     * The item is marked as cached before the provider is called, so reading
+     * it again from within the provider does not recurse.
+     *
+     * @param index the index of the item
+     */
+    void resolve(int index)
+    {
+        setItem(index, "", -1);
+
+        if (provider != null)
+        {
+            provider.resolve(this, index);
+        }
+    }
+
+    /**
+     * Sets the number of items. New items are not cached.
+     *
+     * @param newCount the new number of items
+     */
+    void setItemCount(int newCount)
+    {
+        if (newCount > count)
+        {
+            ensureCapacity(newCount);
+
+            for (int i = count; i < newCount; i++)
+            {
+                items[i] = null;
+                images[i] = -1;
+            }
+        }
+        else
+        {
+            for (int i = newCount; i < count; i++)
+            {
+                if (items[i] != null)
+                {
+                    if (!textIndexStale)
+                    {
+                        textIndex.remove(items[i], i);
+                    }
+                    items[i] = null;
+                }
+            }
+        }
+
+        count = newCount;
+        clearSearchIndexes();
+    }
+
+    /**
+     * Forgets the contents of the item at the given index, so that they are
+     * requested again the next time they are needed.
+     *
+     * @param index the index of the item
+     */
+    void clear(int index)
+    {
+        setItem(index, null, -1);
+    }
+
+    /**
+     * Forgets the contents of all items.
+     */
+    void clearAll()
+    {
+        for (int i = 0; i < count; i++)
+        {
+            items[i] = null;
+            images[i] = -1;
+        }
+
+        textIndex.clear();
+        textIndexStale = false;
+        clearSearchIndexes();
+    }
+
+}
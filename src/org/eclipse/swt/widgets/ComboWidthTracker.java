@@ -0,0 +1,153 @@
+package org.eclipse.swt.widgets;
+
+/**
+ * Multiset of the item widths of a <code>ComboBoxEx</code>.
+ * <p>
+ * Distinct widths are kept in a sorted array together with the number of
+ * items that have each width, so the widest item is known without measuring
+ * the list again after an item is removed. Adding or removing a width takes a
+ * binary search plus an array move over the distinct widths, which are few
+ * because widths are small pixel counts.
+ * </p>
+ * <p>
+ * The widths are only valid for the font they were measured with. A tracker
+ * that was never filled, or whose font is not the current font, has to be
+ * rebuilt by the caller.
+ * </p>
+ */
+class ComboWidthTracker
+{
+
+    int[] widths = new int[16];
+    int[] counts = new int[16];
+    int size;
+
+    int /*long*/ font;
+    boolean valid;
+
+    /**
+     * Returns whether the tracker holds the widths measured with the given
+     * font.
+     *
+     * @param font the font handle
+     * @return <code>true</code> if the tracker is up to date
+     */
+    boolean isValid(int /*long*/ font)
+    {
+        return valid && this.font == font;
+    }
+
+    /**
+     * Empties the tracker and marks it as up to date for the given font.
+     *
+     * @param font the font handle
+     */
+    void reset(int /*long*/ font)
+    {
+        this.font = font;
+        size = 0;
+        valid = true;
+    }
+
+    /**
+     * Marks the tracker as out of date.
+     */
+    void invalidate()
+    {
+        size = 0;
+        valid = false;
+    }
+
+    /**
+     * Adds a width.
+     *
+     * @param width the width
+     */
+    void add(int width)
+    {
+        int index = search(width);
+
+        if (index < size && widths[index] == width)
+        {
+            counts[index]++;
+            return;
+        }
+
+        if (size == widths.length)
+        {
+            int[] newWidths = new int[size * 2];
+            System.arraycopy(widths, 0, newWidths, 0, size);
+            widths = newWidths;
+
+            int[] newCounts = new int[size * 2];
+            System.arraycopy(counts, 0, newCounts, 0, size);
+            counts = newCounts;
+        }
+
+        System.arraycopy(widths, index, widths, index + 1, size - index);
+        System.arraycopy(counts, index, counts, index + 1, size - index);
+        widths[index] = width;
+        counts[index] = 1;
+        size++;
+    }
+
+    /**
+     * Removes a width. Removing a width that was never added leaves the
+     * tracker out of date.
+     *
+     * @param width the width
+     */
+    void remove(int width)
+    {
+        int index = search(width);
+
+        if (index == size || widths[index] != width)
+        {
+            invalidate();
+            return;
+        }
+
+        if (--counts[index] == 0)
+        {
+            System.arraycopy(widths, index + 1, widths, index, size - index - 1);
+            System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Returns the largest width, or 0 if the tracker is empty.
+     *
+     * @return the largest width
+     */
+    int getMax()
+    {
+        return size > 0 ? widths[size - 1] : 0;
+    }
+
+    /**
+     * Returns the index of the first distinct width that is not smaller than
+     * the given width.
+     */
+    int search(int width)
+    {
+        int low = 0, high = size;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (widths[mid] < width)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+}
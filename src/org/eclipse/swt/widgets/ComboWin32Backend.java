@@ -0,0 +1,356 @@
+package org.eclipse.swt.widgets;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.internal.ImageList;
+import org.eclipse.swt.internal.win32.MONITORINFO;
+import org.eclipse.swt.internal.win32.OS;
+import org.eclipse.swt.internal.win32.RECT;
+import org.eclipse.swt.internal.win32.TCHAR;
+
+/**
+ * <code>ComboBackend</code> of a <code>ComboBoxEx</code> on Win32.
+ * <p>
+ * The handle of the widget is read on every call, so the backend stays valid
+ * when the handle is recreated.
+ * </p>
+ */
+class ComboWin32Backend implements ComboBackend
+{
+
+    ComboBoxEx combo;
+
+    /* Native COMBOBOXEXITEM reused for every insertion */
+    ComboBoxExItem nativeItem;
+
+    ImageList imageList;
+
+    /* Number of images pushed into the ImageList */
+    int imageListCount;
+
+    int /*long*/ measureDC, measureFont, measureOldFont;
+    RECT measureRect;
+
+    long calls;
+
+    /**
+     * Creates the backend of the given widget.
+     *
+     * @param combo the widget
+     */
+    ComboWin32Backend(ComboBoxEx combo)
+    {
+        this.combo = combo;
+    }
+
+    /**
+     * Inserts an item through the shared COMBOBOXEXITEM structure.
+     * <p>
+     * COMBOBOXEXITEM is not available in SWT, the structure is written into
+     * heap memory by <code>ComboBoxExItem</code> instead of going through JNA
+     * for every item.
+     * </p>
+     */
+    public int insertItem(int index, String string, int image)
+    {
+        calls++;
+        return getNativeItem().insert(combo.handle, index, string, image);
+    }
+
+    public int insertCallbackItem(int index)
+    {
+        calls++;
+        return getNativeItem().insertCallback(combo.handle, index);
+    }
+
+    ComboBoxExItem getNativeItem()
+    {
+        if (nativeItem == null)
+        {
+            nativeItem = new ComboBoxExItem(combo.getCodePage());
+        }
+
+        return nativeItem;
+    }
+
+    public int deleteItem(int index)
+    {
+        calls++;
+        return (int) /* 64 */OS.SendMessage(combo.handle, OS.CB_DELETESTRING, index, 0);
+    }
+
+    public void deleteAll()
+    {
+        calls++;
+        OS.SendMessage(combo.handle, OS.CB_RESETCONTENT, 0, 0);
+    }
+
+    public void initStorage(int count, int charCount)
+    {
+        calls++;
+        OS.SendMessage(combo.handle, ComboBoxEx.CB_INITSTORAGE, count, charCount * TCHAR.sizeof);
+    }
+
+    public int getSelection()
+    {
+        calls++;
+        return (int) /* 64 */OS.SendMessage(combo.handle, OS.CB_GETCURSEL, 0, 0);
+    }
+
+    public int setSelection(int index)
+    {
+        calls++;
+        return (int) /* 64 */OS.SendMessage(combo.handle, OS.CB_SETCURSEL, index, 0);
+    }
+
+    public int getTextLength()
+    {
+        calls++;
+        return OS.GetWindowTextLength(combo.handle);
+    }
+
+    public String getText()
+    {
+        calls++;
+        int length = OS.GetWindowTextLength(combo.handle);
+        if (length == 0)
+            return "";
+        ComboTextBuffer textBuffer = combo.getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(combo.getCodePage(), length + 1);
+        OS.GetWindowText(combo.handle, buffer, length + 1);
+        String string = buffer.toString(0, length);
+        textBuffer.release(buffer);
+        return string;
+    }
+
+    public boolean setText(String string)
+    {
+        calls++;
+        ComboTextBuffer textBuffer = combo.getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(combo.getCodePage(), string);
+        try
+        {
+            return OS.SetWindowText(combo.handle, buffer);
+        }
+        finally
+        {
+            textBuffer.release(buffer);
+        }
+    }
+
+    public int getEditSelection()
+    {
+        calls++;
+        return (int) /* 64 */OS.SendMessage(combo.handle, OS.CB_GETEDITSEL, 0, 0);
+    }
+
+    public void setEditSelection(int selection)
+    {
+        calls++;
+        OS.SendMessage(combo.handle, OS.CB_SETEDITSEL, 0, selection);
+    }
+
+    public int /*long*/ getFont()
+    {
+        calls++;
+        return OS.SendMessage(combo.handle, OS.WM_GETFONT, 0, 0);
+    }
+
+    /**
+     * Measures text with DrawText. The device context is acquired on the
+     * first call and released in <code>endMeasure()</code>.
+     */
+    public int measureText(String string)
+    {
+        calls++;
+
+        if (measureDC == 0)
+        {
+            measureDC = OS.GetDC(combo.handle);
+            measureFont = OS.SendMessage(combo.handle, OS.WM_GETFONT, 0, 0);
+            if (measureFont != 0)
+            {
+                measureOldFont = OS.SelectObject(measureDC, measureFont);
+            }
+            if (measureRect == null)
+            {
+                measureRect = new RECT();
+            }
+        }
+
+        ComboTextBuffer textBuffer = combo.getTextBuffer();
+        TCHAR buffer = textBuffer.acquire(combo.getCodePage(), string);
+        int flags = OS.DT_CALCRECT | OS.DT_SINGLELINE | OS.DT_NOPREFIX;
+        OS.DrawText(measureDC, buffer, -1, measureRect, flags);
+        textBuffer.release(buffer);
+
+        return measureRect.right - measureRect.left;
+    }
+
+    public void endMeasure()
+    {
+        if (measureDC != 0)
+        {
+            if (measureFont != 0)
+            {
+                OS.SelectObject(measureDC, measureOldFont);
+            }
+
+            OS.ReleaseDC(combo.handle, measureDC);
+        }
+
+        measureDC = measureFont = measureOldFont = 0;
+    }
+
+    public int getItemHeight()
+    {
+        calls++;
+        return (int) /* 64 */OS.SendMessage(combo.handle, OS.CB_GETITEMHEIGHT, 0, 0);
+    }
+
+    /**
+     * Stores an image in the ImageList. The ImageList is sent to the control
+     * once, when it is created.
+     */
+    public void setImage(int index, Object image)
+    {
+        calls++;
+
+        if (imageList == null)
+        {
+            imageList = new ImageList(combo.style & SWT.RIGHT_TO_LEFT);
+            OS.SendMessage(combo.handle, ComboBoxEx.CBEM_SETIMAGELIST, 0, imageList.getHandle());
+        }
+
+        if (index >= imageListCount)
+        {
+            imageList.add((Image) image);
+            imageListCount++;
+        }
+        else
+        {
+            imageList.put(index, (Image) image);
+        }
+    }
+
+    public void releaseImages()
+    {
+        imageListCount = 0;
+
+        if (imageList == null)
+        {
+            return;
+        }
+
+        calls++;
+
+        if (combo.handle != 0)
+        {
+            OS.SendMessage(combo.handle, ComboBoxEx.CBEM_SETIMAGELIST, 0, 0);
+        }
+
+        imageList.dispose();
+        imageList = null;
+    }
+
+    /**
+     * Returns the width of the images in the ImageList.
+     *
+     * @return the width or 0 if there is no ImageList
+     */
+    int getImageWidth()
+    {
+        return imageList != null ? imageList.getImageSize().x : 0;
+    }
+
+    public void setScrollWidth(int scrollWidth, int count)
+    {
+        calls++;
+        int /*long*/ handle = combo.handle;
+        if ((combo.style & SWT.SIMPLE) != 0)
+        {
+            OS.SendMessage(handle, OS.CB_SETHORIZONTALEXTENT, scrollWidth, 0);
+            return;
+        }
+        boolean scroll = false;
+        if (count > 3)
+        {
+            int maxWidth = 0;
+            if (OS.IsWinCE || OS.WIN32_VERSION < OS.VERSION(4, 10))
+            {
+                RECT rect = new RECT();
+                OS.SystemParametersInfo(OS.SPI_GETWORKAREA, 0, rect, 0);
+                maxWidth = (rect.right - rect.left) / 4;
+            }
+            else
+            {
+                int /* long */hmonitor = OS.MonitorFromWindow(handle, OS.MONITOR_DEFAULTTONEAREST);
+                MONITORINFO lpmi = new MONITORINFO();
+                lpmi.cbSize = MONITORINFO.sizeof;
+                OS.GetMonitorInfo(hmonitor, lpmi);
+                maxWidth = (lpmi.rcWork_right - lpmi.rcWork_left) / 4;
+            }
+            scroll = scrollWidth > maxWidth;
+        }
+        if (scroll)
+        {
+            OS.SendMessage(handle, OS.CB_SETDROPPEDWIDTH, 0, 0);
+            OS.SendMessage(handle, OS.CB_SETHORIZONTALEXTENT, scrollWidth, 0);
+        }
+        else
+        {
+            scrollWidth += OS.GetSystemMetrics(OS.SM_CYHSCROLL);
+            OS.SendMessage(handle, OS.CB_SETDROPPEDWIDTH, scrollWidth, 0);
+            OS.SendMessage(handle, OS.CB_SETHORIZONTALEXTENT, 0, 0);
+        }
+    }
+
+    public boolean suspendRedraw()
+    {
+        calls++;
+        boolean redraw = combo.drawCount == 0 && OS.IsWindowVisible(combo.handle);
+        if (redraw)
+            combo.setRedraw(false);
+        return redraw;
+    }
+
+    public void resumeRedraw()
+    {
+        calls++;
+        combo.setRedraw(true);
+    }
+
+    public void redraw()
+    {
+        calls++;
+        OS.InvalidateRect(combo.handle, null, true);
+    }
+
+    public void redrawList()
+    {
+        calls++;
+        combo.redrawList();
+    }
+
+    public long getCallCount()
+    {
+        return calls;
+    }
+
+    public void resetCallCount()
+    {
+        calls = 0;
+    }
+
+    public void dispose()
+    {
+        endMeasure();
+
+        if (nativeItem != null)
+        {
+            nativeItem.dispose();
+            nativeItem = null;
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.junit.Test;
+
+/**
+ * Runs the removals of <code>ComboCore</code> against
+ * <code>ComboSimulatedBackend</code> and checks that the model, the
+ * simulated control, the images, the selection and the Modify events agree
+ * with a plain list.
+ */
+public class ComboCoreRemoveTest
+{
+
+    ComboSimulatedBackend backend;
+    ComboCore core;
+    int modifyCount;
+
+    void create(int style)
+    {
+        backend = new ComboSimulatedBackend((style & SWT.READ_ONLY) != 0);
+        core = new ComboCore(backend, new ComboCore.Host()
+        {
+            public void sendEvent(int eventType)
+            {
+                if (eventType == SWT.Modify)
+                    modifyCount++;
+            }
+
+            public boolean isDisposed()
+            {
+                return false;
+            }
+
+            public void setData(int index)
+            {
+            }
+        }, style);
+    }
+
+    void check(ArrayList list)
+    {
+        assertEquals(list.size(), core.model.getCount());
+        assertEquals(list.size(), backend.count);
+        for (int i = 0; i < list.size(); i++)
+        {
+            assertEquals(list.get(i), core.model.getItem(i));
+            assertEquals(list.get(i), backend.items[i]);
+            assertEquals(i, core.indexOf((String) list.get(i), i));
+        }
+    }
+
+    @Test
+    public void testRandomRanges()
+    {
+        Random random = new Random(16);
+        create(SWT.DROP_DOWN | SWT.READ_ONLY);
+        ArrayList list = new ArrayList();
+
+        for (int step = 0; step < 2000; step++)
+        {
+            if (list.isEmpty() || random.nextInt(3) > 0)
+            {
+                String string = "item" + random.nextInt(100);
+                int index = random.nextInt(list.size() + 1);
+                core.add(string, null, index);
+                list.add(index, string);
+            }
+            else
+            {
+                if (random.nextBoolean())
+                    backend.setSelection(random.nextInt(list.size()));
+                int selection = backend.getSelection();
+                String selected = selection != -1 ? (String) list.get(selection) : null;
+
+                int start = random.nextInt(list.size());
+                int end = start + random.nextInt(Math.min(list.size() - start, 10));
+                modifyCount = 0;
+                core.remove(start, end);
+                for (int i = end; i >= start; i--)
+                {
+                    list.remove(i);
+                }
+
+                if (selection != -1 && (selection < start || selection > end))
+                {
+                    assertEquals(selected, core.model.getItem(backend.getSelection()));
+                    assertEquals(0, modifyCount);
+                }
+                else if (selection != -1)
+                {
+                    assertEquals(-1, backend.getSelection());
+                    assertEquals(1, modifyCount);
+                }
+            }
+
+            check(list);
+        }
+    }
+
+    @Test
+    public void testRemoveAllAsRange()
+    {
+        create(SWT.DROP_DOWN);
+        String[] items = new String[40000];
+        for (int i = 0; i < items.length; i++)
+        {
+            items[i] = "item" + i;
+        }
+        core.setItems(items, null);
+        core.indexOf("item0", 0);
+
+        core.remove(0, items.length - 1);
+
+        assertEquals(0, core.model.getCount());
+        assertEquals(0, backend.count);
+        assertEquals(-1, core.indexOf("item0", 0));
+    }
+
+    @Test
+    public void testRangeReleasesImages()
+    {
+        create(SWT.DROP_DOWN);
+        Object image1 = "image1", image2 = "image2";
+        for (int i = 0; i < 10; i++)
+        {
+            core.add("item" + i, i % 2 == 0 ? image1 : image2, -1);
+        }
+
+        core.remove(2, 7);
+
+        assertEquals(4, core.model.getCount());
+        assertTrue(!core.imageRegistry.isEmpty());
+        assertEquals("item8", core.getItem(2));
+        assertEquals(core.imageRegistry.indexOf(image1), core.model.getImage(2));
+
+        core.remove(0, 3);
+
+        assertTrue(core.imageRegistry.isEmpty());
+    }
+
+}
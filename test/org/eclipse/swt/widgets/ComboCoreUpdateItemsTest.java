@@ -0,0 +1,212 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.junit.Test;
+
+/**
+ * Runs <code>ComboCore.updateItems()</code> against
+ * <code>ComboSimulatedBackend</code> and checks that the list ends up equal
+ * to the new items, that the text, the selected item and the edit selection
+ * are kept, and that at most one Modify is sent, on both the incremental
+ * and the reset path.
+ */
+public class ComboCoreUpdateItemsTest
+{
+
+    ComboSimulatedBackend backend;
+    ComboCore core;
+    int modifyCount;
+
+    void create(int style)
+    {
+        backend = new ComboSimulatedBackend((style & SWT.READ_ONLY) != 0);
+        core = new ComboCore(backend, new ComboCore.Host()
+        {
+            public void sendEvent(int eventType)
+            {
+                if (eventType == SWT.Modify)
+                    modifyCount++;
+            }
+
+            public boolean isDisposed()
+            {
+                return false;
+            }
+
+            public void setData(int index)
+            {
+            }
+        }, style);
+    }
+
+    static String[] randomItems(Random random)
+    {
+        int length = random.nextInt(4) == 0 ? random.nextInt(300) : random.nextInt(30);
+        String[] items = new String[length];
+        for (int i = 0; i < length; i++)
+        {
+            items[i] = "item" + random.nextInt(40);
+        }
+        return items;
+    }
+
+    static boolean contains(String[] items, String string)
+    {
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i].equals(string))
+                return true;
+        }
+        return false;
+    }
+
+    void checkItems(String[] items)
+    {
+        assertEquals(items.length, core.model.getCount());
+        assertEquals(items.length, backend.count);
+        for (int i = 0; i < items.length; i++)
+        {
+            assertEquals(items[i], core.model.getItem(i));
+            assertEquals(items[i], backend.items[i]);
+            assertEquals(i, core.model.indexOf(items[i], i));
+        }
+    }
+
+    void update(Random random, boolean typed)
+    {
+        String[] items = randomItems(random);
+        String selected = null;
+
+        if (typed)
+        {
+            /* Typing clears the selection of the list */
+            String text = "typed" + random.nextInt(3);
+            backend.setSelection(-1);
+            backend.setText(text);
+            backend.setEditSelection(random.nextInt(text.length() + 1));
+        }
+        else if (core.model.getCount() > 0)
+        {
+            int index = random.nextInt(core.model.getCount());
+            backend.setSelection(index);
+            selected = core.model.getItem(index);
+        }
+
+        String text = backend.getText();
+        int editSelection = backend.getEditSelection();
+        modifyCount = 0;
+
+        core.updateItems(items);
+
+        checkItems(items);
+        assertTrue(modifyCount <= 1);
+
+        if (selected != null && contains(items, selected))
+        {
+            assertTrue(backend.getSelection() != -1);
+            assertEquals(selected, core.model.getItem(backend.getSelection()));
+        }
+
+        if (!backend.readOnly)
+        {
+            assertEquals(text, backend.getText());
+            assertEquals(editSelection, backend.getEditSelection());
+            assertEquals(0, modifyCount);
+        }
+        else
+        {
+            assertEquals(text.equals(backend.getText()) ? 0 : 1, modifyCount);
+        }
+    }
+
+    @Test
+    public void testEditable()
+    {
+        Random random = new Random(8);
+        create(SWT.DROP_DOWN);
+
+        for (int round = 0; round < 2000; round++)
+        {
+            update(random, random.nextBoolean());
+        }
+    }
+
+    @Test
+    public void testReadOnly()
+    {
+        Random random = new Random(9);
+        create(SWT.DROP_DOWN | SWT.READ_ONLY);
+
+        for (int round = 0; round < 2000; round++)
+        {
+            update(random, false);
+        }
+    }
+
+    @Test
+    public void testResetKeepsTypedText()
+    {
+        create(SWT.DROP_DOWN);
+        String[] items = new String[1000];
+        for (int i = 0; i < items.length; i++)
+        {
+            items[i] = "item" + i;
+        }
+        core.setItems(items, null);
+        backend.setText("item99");
+        backend.setEditSelection(6 | (6 << 16));
+        modifyCount = 0;
+
+        core.updateItems(new String[] { "a", "b", "c" });
+
+        checkItems(new String[] { "a", "b", "c" });
+        assertEquals("item99", backend.getText());
+        assertEquals(6 | (6 << 16), backend.getEditSelection());
+        assertEquals(0, modifyCount);
+    }
+
+    @Test
+    public void testResetKeepsSelection()
+    {
+        create(SWT.DROP_DOWN);
+        ArrayList list = new ArrayList();
+        for (int i = 0; i < 1000; i++)
+        {
+            list.add("item" + i);
+        }
+        core.setItems((String[]) list.toArray(new String[list.size()]), null);
+        backend.setSelection(500);
+        modifyCount = 0;
+
+        core.updateItems(new String[] { "a", "item500", "c" });
+
+        assertEquals(1, backend.getSelection());
+        assertEquals("item500", backend.getText());
+        assertEquals(0, modifyCount);
+    }
+
+    @Test
+    public void testUnchangedSendsNothing()
+    {
+        create(SWT.DROP_DOWN);
+        String[] items = { "a", "b", "c" };
+        core.setItems(items, null);
+        backend.setSelection(1);
+        modifyCount = 0;
+        backend.resetCallCount();
+
+        core.updateItems(new String[] { "a", "b", "c" });
+
+        assertEquals(0, modifyCount);
+        assertEquals(1, backend.getSelection());
+        assertEquals(0, backend.getCallCount(ComboSimulatedBackend.CALL_INSERT)
+            + backend.getCallCount(ComboSimulatedBackend.CALL_DELETE));
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the searches of <code>ComboFilter</code>, run on the calling thread
+ * with <code>run()</code>, against a scan of the items.
+ */
+public class ComboFilterTest
+{
+
+    ComboFilter filter;
+
+    @Before
+    public void setUp()
+    {
+        filter = new ComboFilter(new ComboFilter.Receiver()
+        {
+            public void filtered(int generation, String query, String[] items)
+            {
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        filter.dispose();
+    }
+
+    static String[] filter(String[] items, String query)
+    {
+        ArrayList result = new ArrayList();
+        for (int i = 0; i < items.length; i++)
+        {
+            if (ComboTrigramIndex.fold(items[i]).indexOf(ComboTrigramIndex.fold(query)) != -1)
+                result.add(items[i]);
+        }
+        return (String[]) result.toArray(new String[result.size()]);
+    }
+
+    static String[] randomItems(Random random, int count)
+    {
+        String[] items = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            StringBuffer buffer = new StringBuffer();
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++)
+            {
+                char c = (char) ('a' + random.nextInt(4));
+                buffer.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+            }
+            items[i] = buffer.toString();
+        }
+        return items;
+    }
+
+    @Test
+    public void testQueries()
+    {
+        Random random = new Random(11);
+        String[] items = randomItems(random, 20000);
+        int generation = filter.generation;
+
+        /* Typing, deleting and retyping, so both narrowing and fresh searches run */
+        String[] queries = { "a", "ab", "abc", "abcd", "abcdA", "bcd", "bc", "b", "dab", "daBC", "", "cc", "ccc" };
+        for (int i = 0; i < queries.length; i++)
+        {
+            assertArrayEquals(queries[i], filter(items, queries[i]), filter.run(items, queries[i], generation));
+        }
+    }
+
+    @Test
+    public void testCancelledBuildResumes()
+    {
+        String[] items = randomItems(new Random(12), 50000);
+        int generation = filter.generation;
+
+        filter.generation++;
+        assertNull(filter.run(items, "abc", generation));
+        assertTrue(filter.indexCount < items.length);
+        int indexed = filter.indexCount;
+
+        generation = filter.generation;
+        assertArrayEquals(filter(items, "abc"), filter.run(items, "abc", generation));
+        assertTrue(indexed > 0);
+        assertTrue(filter.indexCount == items.length);
+    }
+
+}
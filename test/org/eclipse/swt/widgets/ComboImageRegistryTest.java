@@ -0,0 +1,110 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the indices and reference counts of <code>ComboImageRegistry</code>
+ * against counters kept per image while images are acquired and released at
+ * random.
+ */
+public class ComboImageRegistryTest
+{
+
+    /**
+     * An image stand-in whose hash codes collide, so that lookups probe.
+     */
+    static class Image
+    {
+
+        int id;
+
+        Image(int id)
+        {
+            this.id = id;
+        }
+
+        public boolean equals(Object object)
+        {
+            return object instanceof Image && ((Image) object).id == id;
+        }
+
+        public int hashCode()
+        {
+            return id % 3;
+        }
+
+    }
+
+    @Test
+    public void testRandomUse()
+    {
+        Random random = new Random(19);
+        ComboImageRegistry registry = new ComboImageRegistry();
+        int[] uses = new int[100];
+        int[] indices = new int[uses.length];
+
+        for (int step = 0; step < 20000; step++)
+        {
+            int id = random.nextInt(uses.length);
+            if (random.nextBoolean())
+            {
+                int index = registry.acquire(new Image(id));
+                if (uses[id] > 0)
+                    assertEquals(indices[id], index);
+                indices[id] = index;
+                uses[id]++;
+            }
+            else if (uses[id] > 0)
+            {
+                assertEquals(uses[id] == 1, registry.release(indices[id]));
+                uses[id]--;
+            }
+
+            boolean empty = true;
+            for (int i = 0; i < uses.length; i++)
+            {
+                Image image = new Image(i);
+                if (uses[i] > 0)
+                {
+                    assertEquals(indices[i], registry.indexOf(image));
+                    assertEquals(uses[i], registry.getReferences(indices[i]));
+                    assertEquals(image, registry.getImage(indices[i]));
+                    empty = false;
+                }
+                else
+                {
+                    assertEquals(-1, registry.indexOf(image));
+                }
+            }
+            assertEquals(empty, registry.isEmpty());
+            assertTrue(registry.getSize() <= uses.length);
+        }
+    }
+
+    @Test
+    public void testReleasedIndexIsReused()
+    {
+        ComboImageRegistry registry = new ComboImageRegistry();
+        assertEquals(0, registry.acquire("a"));
+        assertEquals(1, registry.acquire("b"));
+        assertEquals(0, registry.acquire("a"));
+
+        assertEquals(false, registry.release(0));
+        assertEquals(true, registry.release(0));
+        assertEquals(false, registry.release(0));
+        assertEquals(-1, registry.indexOf("a"));
+
+        assertEquals(0, registry.acquire("c"));
+        assertEquals(2, registry.getSize());
+
+        registry.clear();
+        assertTrue(registry.isEmpty());
+        assertEquals(-1, registry.indexOf("b"));
+    }
+
+}
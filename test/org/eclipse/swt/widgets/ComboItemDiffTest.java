@@ -0,0 +1,165 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks <code>ComboItemDiff</code> against a brute-force longest common
+ * subsequence: applying the script yields the new list, and the script is
+ * as short as possible while it stays under <code>MAX_EDITS</code>.
+ */
+public class ComboItemDiffTest
+{
+
+    static String[] randomItems(Random random, int length, int alphabet)
+    {
+        String[] items = new String[length];
+        for (int i = 0; i < length; i++)
+        {
+            items[i] = String.valueOf((char) ('a' + random.nextInt(alphabet)));
+        }
+        return items;
+    }
+
+    /**
+     * Applies the script the way <code>ComboCore.updateItems()</code> does.
+     */
+    static String[] apply(ComboItemDiff diff, String[] oldItems, String[] newItems)
+    {
+        ArrayList list = new ArrayList();
+        for (int i = 0; i < oldItems.length; i++)
+        {
+            list.add(oldItems[i]);
+        }
+
+        int position = diff.start, i = diff.start, j = diff.start;
+        while (i < diff.oldEnd || j < diff.newEnd)
+        {
+            if (i < diff.oldEnd && diff.isDeleted(i))
+            {
+                list.remove(position);
+                i++;
+            }
+            else if (j < diff.newEnd && diff.isInserted(j))
+            {
+                list.add(position++, newItems[j++]);
+            }
+            else
+            {
+                assertEquals(oldItems[i], newItems[j]);
+                position++;
+                i++;
+                j++;
+            }
+        }
+
+        return (String[]) list.toArray(new String[list.size()]);
+    }
+
+    static int lcs(String[] a, String[] b)
+    {
+        int[][] lengths = new int[a.length + 1][b.length + 1];
+        for (int i = 1; i <= a.length; i++)
+        {
+            for (int j = 1; j <= b.length; j++)
+            {
+                lengths[i][j] = a[i - 1].equals(b[j - 1]) ? lengths[i - 1][j - 1] + 1
+                    : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[a.length][b.length];
+    }
+
+    @Test
+    public void testScriptIsShortest()
+    {
+        Random random = new Random(1);
+
+        for (int round = 0; round < 5000; round++)
+        {
+            String[] oldItems = randomItems(random, random.nextInt(30), 1 + random.nextInt(6));
+            String[] newItems = randomItems(random, random.nextInt(30), 1 + random.nextInt(6));
+
+            ComboItemDiff diff = new ComboItemDiff(oldItems, oldItems.length, newItems);
+
+            assertArrayEquals(newItems, apply(diff, oldItems, newItems));
+            int common = lcs(oldItems, newItems);
+            assertEquals(oldItems.length - common, diff.deleteCount);
+            assertEquals(newItems.length - common, diff.insertCount);
+            assertEquals(diff.deleteCount == 0 && diff.insertCount == 0, diff.isEmpty());
+        }
+    }
+
+    @Test
+    public void testSmallChangeOfLongList()
+    {
+        Random random = new Random(2);
+        String[] oldItems = new String[10000];
+        for (int i = 0; i < oldItems.length; i++)
+        {
+            oldItems[i] = "item" + i;
+        }
+
+        for (int round = 0; round < 100; round++)
+        {
+            ArrayList list = new ArrayList();
+            for (int i = 0; i < oldItems.length; i++)
+            {
+                list.add(oldItems[i]);
+            }
+            int edits = random.nextInt(20);
+            for (int k = 0; k < edits; k++)
+            {
+                if (random.nextBoolean())
+                    list.remove(random.nextInt(list.size()));
+                else
+                    list.add(random.nextInt(list.size() + 1), "new" + k);
+            }
+            String[] newItems = (String[]) list.toArray(new String[list.size()]);
+
+            ComboItemDiff diff = new ComboItemDiff(oldItems, oldItems.length, newItems);
+
+            assertArrayEquals(newItems, apply(diff, oldItems, newItems));
+            assertTrue(diff.deleteCount + diff.insertCount <= edits);
+        }
+    }
+
+    @Test
+    public void testLongScriptReplacesMiddle()
+    {
+        String[] oldItems = new String[3000];
+        String[] newItems = new String[3000];
+        for (int i = 0; i < oldItems.length; i++)
+        {
+            oldItems[i] = "old" + i;
+            newItems[i] = "new" + i;
+        }
+        newItems[0] = oldItems[0];
+
+        ComboItemDiff diff = new ComboItemDiff(oldItems, oldItems.length, newItems);
+
+        assertArrayEquals(newItems, apply(diff, oldItems, newItems));
+        assertEquals(1, diff.start);
+    }
+
+    @Test
+    public void testOldCountBelowArrayLength()
+    {
+        String[] oldItems = { "a", "b", "c", null, null };
+        String[] newItems = { "a", "c", "d" };
+
+        ComboItemDiff diff = new ComboItemDiff(oldItems, 3, newItems);
+
+        String[] used = { "a", "b", "c" };
+        assertArrayEquals(newItems, apply(diff, used, newItems));
+        assertEquals(1, diff.deleteCount);
+        assertEquals(1, diff.insertCount);
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.eclipse.swt.SWT;
+import org.junit.Test;
+
+/**
+ * Runs <code>ComboLoader</code> against <code>ComboCore</code> and
+ * <code>ComboSimulatedBackend</code> and checks that the listener is
+ * notified of the end of loading exactly once, however loading ends.
+ */
+public class ComboLoaderTest
+{
+
+    ComboSimulatedBackend backend;
+    ComboCore core;
+    boolean disposed;
+
+    int completions;
+    int completedCount;
+    boolean completedCancelled;
+
+    ComboLoadListener listener = new ComboLoadListener()
+    {
+        public void loadProgress(int loaded)
+        {
+        }
+
+        public void loadCompleted(int loaded, boolean cancelled)
+        {
+            completions++;
+            completedCount = loaded;
+            completedCancelled = cancelled;
+        }
+    };
+
+    void create()
+    {
+        backend = new ComboSimulatedBackend(false);
+        core = new ComboCore(backend, new ComboCore.Host()
+        {
+            public void sendEvent(int eventType)
+            {
+            }
+
+            public boolean isDisposed()
+            {
+                return disposed;
+            }
+
+            public void setData(int index)
+            {
+            }
+        }, SWT.DROP_DOWN);
+    }
+
+    static Iterator items(int count)
+    {
+        ArrayList list = new ArrayList();
+        for (int i = 0; i < count; i++)
+        {
+            list.add("item" + i);
+        }
+        return list.iterator();
+    }
+
+    @Test
+    public void testCompleted()
+    {
+        create();
+        ComboLoader loader = new ComboLoader(core, items(1000), listener, 0);
+        while (loader.run())
+        {
+            assertEquals(0, completions);
+        }
+
+        assertEquals(1, completions);
+        assertEquals(1000, completedCount);
+        assertTrue(!completedCancelled);
+        assertEquals(1000, core.model.getCount());
+
+        loader.cancel();
+        assertTrue(!loader.run());
+        assertEquals(1, completions);
+    }
+
+    @Test
+    public void testInvalidItem()
+    {
+        create();
+        ArrayList list = new ArrayList();
+        list.add("a");
+        list.add("b");
+        list.add(new Object());
+        list.add("c");
+        ComboLoader loader = new ComboLoader(core, list.iterator(), listener, Long.MAX_VALUE);
+
+        try
+        {
+            loader.run();
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+
+        assertEquals(1, completions);
+        assertEquals(2, completedCount);
+        assertTrue(completedCancelled);
+        assertEquals(2, core.model.getCount());
+
+        assertTrue(!loader.run());
+        loader.cancel();
+        assertEquals(1, completions);
+    }
+
+    @Test
+    public void testHostDisposed()
+    {
+        create();
+        ComboLoader loader = new ComboLoader(core, items(1000), listener, 0);
+        assertTrue(loader.run());
+
+        disposed = true;
+        assertTrue(!loader.run());
+
+        assertEquals(1, completions);
+        assertTrue(completedCancelled);
+        loader.cancel();
+        assertEquals(1, completions);
+    }
+
+    @Test
+    public void testCancelled()
+    {
+        create();
+        ComboLoader loader = new ComboLoader(core, items(1000), listener, 0);
+        assertTrue(loader.run());
+
+        loader.cancel();
+        assertTrue(!loader.run());
+
+        assertEquals(1, completions);
+        assertEquals(ComboLoader.CHECK_INTERVAL, completedCount);
+        assertTrue(completedCancelled);
+    }
+
+}
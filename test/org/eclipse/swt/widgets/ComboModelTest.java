@@ -0,0 +1,124 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that <code>ComboModel</code> holds the same items as a plain list
+ * while items are inserted, replaced and removed at random, singly and in
+ * ranges.
+ */
+public class ComboModelTest
+{
+
+    static void check(ComboModel model, ArrayList list)
+    {
+        assertEquals(list.size(), model.getCount());
+        for (int i = 0; i < list.size(); i++)
+        {
+            assertEquals(list.get(i), model.getItem(i));
+            assertEquals(i, model.getImage(i));
+        }
+        assertArrayEquals(list.toArray(), model.getItems());
+    }
+
+    /**
+     * Replaces the image of every item by its index, so that the images
+     * show whether they moved along with the texts.
+     */
+    static void renumber(ComboModel model)
+    {
+        for (int i = 0; i < model.getCount(); i++)
+        {
+            model.images[i] = i;
+        }
+    }
+
+    @Test
+    public void testRandomChanges()
+    {
+        Random random = new Random(3);
+
+        for (int round = 0; round < 50; round++)
+        {
+            ComboModel model = new ComboModel();
+            ArrayList list = new ArrayList();
+
+            for (int step = 0; step < 300; step++)
+            {
+                int kind = random.nextInt(10);
+                if (kind < 4 || list.isEmpty())
+                {
+                    String string = "item" + random.nextInt(50);
+                    int index = random.nextBoolean() ? list.size() : random.nextInt(list.size() + 1);
+                    model.add(string, -1, index);
+                    list.add(index, string);
+                }
+                else if (kind < 6)
+                {
+                    int index = random.nextInt(list.size());
+                    model.remove(index);
+                    list.remove(index);
+                }
+                else if (kind < 8)
+                {
+                    int start = random.nextInt(list.size());
+                    int end = start + random.nextInt(list.size() - start);
+                    model.remove(start, end);
+                    for (int i = end; i >= start; i--)
+                    {
+                        list.remove(i);
+                    }
+                }
+                else if (kind < 9)
+                {
+                    int index = random.nextInt(list.size());
+                    String string = "item" + random.nextInt(50);
+                    model.setItem(index, string, index);
+                    list.set(index, string);
+                }
+                else if (random.nextInt(10) == 0)
+                {
+                    String[] items = new String[random.nextInt(50)];
+                    list.clear();
+                    for (int i = 0; i < items.length; i++)
+                    {
+                        items[i] = "item" + random.nextInt(50);
+                        list.add(items[i]);
+                    }
+                    model.setItems(items, null);
+                }
+
+                renumber(model);
+                check(model, list);
+            }
+
+            model.removeAll();
+            list.clear();
+            check(model, list);
+        }
+    }
+
+    @Test
+    public void testRangeReads()
+    {
+        ComboModel model = new ComboModel();
+        for (int i = 0; i < 100; i++)
+        {
+            model.add("item" + i, -1, i);
+        }
+
+        String[] dest = new String[10];
+        model.getItems(45, 10, dest);
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("item" + (45 + i), dest[i]);
+        }
+    }
+
+}
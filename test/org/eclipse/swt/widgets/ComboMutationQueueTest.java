@@ -0,0 +1,184 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.junit.Test;
+
+/**
+ * Checks that collapsing a batch of <code>ComboMutationQueue</code> changes
+ * leaves the same list as applying every change in turn.
+ */
+public class ComboMutationQueueTest
+{
+
+    static ComboCore createCore()
+    {
+        return new ComboCore(new ComboSimulatedBackend(false), new ComboCore.Host()
+        {
+            public void sendEvent(int eventType)
+            {
+            }
+
+            public boolean isDisposed()
+            {
+                return false;
+            }
+
+            public void setData(int index)
+            {
+            }
+        }, SWT.DROP_DOWN);
+    }
+
+    static ComboMutationQueue.Node link(ComboMutationQueue.Node[] nodes)
+    {
+        for (int i = 0; i + 1 < nodes.length; i++)
+        {
+            nodes[i].next = nodes[i + 1];
+        }
+        return nodes.length > 0 ? nodes[0] : null;
+    }
+
+    /**
+     * Applies the changes that were not dropped the way the queue does.
+     */
+    static void apply(ComboCore core, ComboMutationQueue.Node first)
+    {
+        for (ComboMutationQueue.Node node = first; node != null; node = node.next)
+        {
+            if (node.dropped)
+                continue;
+            switch (node.type)
+            {
+                case ComboMutationQueue.ADD:
+                    core.add(node.string, null, -1);
+                    break;
+                case ComboMutationQueue.REMOVE:
+                    int index = core.indexOf(node.string, 0);
+                    if (index != -1)
+                        core.remove(index, true);
+                    break;
+                case ComboMutationQueue.REMOVE_ALL:
+                    core.removeAll();
+                    break;
+            }
+        }
+    }
+
+    static ArrayList items(ComboCore core)
+    {
+        ArrayList list = new ArrayList();
+        for (int i = 0; i < core.model.getCount(); i++)
+        {
+            list.add(core.model.getItem(i));
+        }
+        return list;
+    }
+
+    @Test
+    public void testRandomBatches()
+    {
+        Random random = new Random(10);
+
+        for (int round = 0; round < 20000; round++)
+        {
+            ComboCore core = createCore();
+            ArrayList expected = new ArrayList();
+            int count = random.nextInt(4);
+            for (int i = 0; i < count; i++)
+            {
+                String string = String.valueOf((char) ('a' + random.nextInt(3)));
+                core.add(string, null, -1);
+                expected.add(string);
+            }
+
+            ComboMutationQueue.Node[] nodes = new ComboMutationQueue.Node[random.nextInt(10)];
+            for (int i = 0; i < nodes.length; i++)
+            {
+                String string = String.valueOf((char) ('a' + random.nextInt(3)));
+                int kind = random.nextInt(10);
+                if (kind < 4)
+                {
+                    nodes[i] = new ComboMutationQueue.Node(ComboMutationQueue.ADD, string);
+                    expected.add(string);
+                }
+                else if (kind < 8)
+                {
+                    nodes[i] = new ComboMutationQueue.Node(ComboMutationQueue.REMOVE, string);
+                    expected.remove(string);
+                }
+                else if (kind < 9)
+                {
+                    nodes[i] = new ComboMutationQueue.Node(ComboMutationQueue.REMOVE_ALL, null);
+                    expected.clear();
+                }
+                else
+                {
+                    nodes[i] = new ComboMutationQueue.Node(ComboMutationQueue.SET_TEXT, string);
+                }
+            }
+
+            apply(core, ComboMutationQueue.collapse(link(nodes), core));
+
+            assertEquals(expected, items(core));
+        }
+    }
+
+    @Test
+    public void testRemoveOfPresentItemIsKept()
+    {
+        ComboCore core = createCore();
+        core.add("x", null, -1);
+        core.add("y", null, -1);
+        ComboMutationQueue.Node add = new ComboMutationQueue.Node(ComboMutationQueue.ADD, "x");
+        ComboMutationQueue.Node remove = new ComboMutationQueue.Node(ComboMutationQueue.REMOVE, "x");
+
+        apply(core, ComboMutationQueue.collapse(link(new ComboMutationQueue.Node[] { add, remove }), core));
+
+        assertFalse(add.dropped || remove.dropped);
+        assertEquals("y", core.model.getItem(0));
+        assertEquals("x", core.model.getItem(1));
+    }
+
+    @Test
+    public void testRemoveCancelsOldestAdd()
+    {
+        ComboCore core = createCore();
+        ComboMutationQueue.Node[] nodes = {
+            new ComboMutationQueue.Node(ComboMutationQueue.ADD, "x"),
+            new ComboMutationQueue.Node(ComboMutationQueue.ADD, "y"),
+            new ComboMutationQueue.Node(ComboMutationQueue.ADD, "x"),
+            new ComboMutationQueue.Node(ComboMutationQueue.REMOVE, "x") };
+
+        apply(core, ComboMutationQueue.collapse(link(nodes), core));
+
+        assertTrue(nodes[0].dropped && nodes[3].dropped);
+        assertFalse(nodes[1].dropped || nodes[2].dropped);
+        assertEquals(2, core.model.getCount());
+        assertEquals("y", core.model.getItem(0));
+        assertEquals("x", core.model.getItem(1));
+    }
+
+    @Test
+    public void testLastTextWins()
+    {
+        ComboCore core = createCore();
+        ComboMutationQueue.Node[] nodes = {
+            new ComboMutationQueue.Node(ComboMutationQueue.SET_TEXT, "a"),
+            new ComboMutationQueue.Node(ComboMutationQueue.SET_TEXT, "b"),
+            new ComboMutationQueue.Node(ComboMutationQueue.REMOVE_ALL, null),
+            new ComboMutationQueue.Node(ComboMutationQueue.SET_TEXT, "c") };
+
+        ComboMutationQueue.collapse(link(nodes), core);
+
+        assertTrue(nodes[0].dropped && nodes[1].dropped);
+        assertFalse(nodes[2].dropped || nodes[3].dropped);
+    }
+
+}
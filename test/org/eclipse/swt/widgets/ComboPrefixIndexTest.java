@@ -0,0 +1,127 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks <code>ComboModel.findPrefix()</code>, answered by
+ * <code>ComboPrefixIndex</code>, against a scan of a plain list while items
+ * are appended, which updates a built index, and changed in the middle,
+ * which drops it.
+ */
+public class ComboPrefixIndexTest
+{
+
+    static String randomItem(Random random)
+    {
+        int length = random.nextInt(5);
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < length; i++)
+        {
+            char c = (char) ('a' + random.nextInt(3));
+            buffer.append(random.nextInt(4) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return buffer.toString();
+    }
+
+    static int findPrefix(ArrayList list, String prefix, int start, boolean ignoreCase)
+    {
+        for (int i = Math.max(start, 0); i < list.size(); i++)
+        {
+            String item = (String) list.get(i);
+            if (item.regionMatches(ignoreCase, 0, prefix, 0, prefix.length()))
+                return i;
+        }
+        return -1;
+    }
+
+    static void check(Random random, ComboModel model, ArrayList list)
+    {
+        for (int k = 0; k < 5; k++)
+        {
+            String prefix = randomItem(random);
+            int start = random.nextInt(list.size() + 2) - 1;
+            boolean ignoreCase = random.nextBoolean();
+            assertEquals(prefix, findPrefix(list, prefix, start, ignoreCase), model.findPrefix(prefix, start, ignoreCase));
+        }
+    }
+
+    @Test
+    public void testRandomChanges()
+    {
+        Random random = new Random(17);
+
+        for (int round = 0; round < 20; round++)
+        {
+            ComboModel model = new ComboModel();
+            ArrayList list = new ArrayList();
+
+            for (int step = 0; step < 500; step++)
+            {
+                int kind = random.nextInt(12);
+                if (kind < 7 || list.isEmpty())
+                {
+                    String string = randomItem(random);
+                    int index = kind < 6 ? list.size() : random.nextInt(list.size() + 1);
+                    model.add(string, -1, index);
+                    list.add(index, string);
+                }
+                else if (kind < 9)
+                {
+                    int index = random.nextInt(list.size());
+                    model.remove(index);
+                    list.remove(index);
+                }
+                else if (kind < 10)
+                {
+                    int index = random.nextInt(list.size());
+                    String string = randomItem(random);
+                    model.setItem(index, string, -1);
+                    list.set(index, string);
+                }
+
+                check(random, model, list);
+            }
+        }
+    }
+
+    @Test
+    public void testAppendsPastPendingLimit()
+    {
+        Random random = new Random(18);
+        ComboModel model = new ComboModel();
+        ArrayList list = new ArrayList();
+        for (int i = 0; i < 1000; i++)
+        {
+            String string = randomItem(random) + i % 7;
+            model.add(string, -1, i);
+            list.add(string);
+        }
+        check(random, model, list);
+
+        for (int i = 0; i < ComboPrefixIndex.MAX_PENDING * 3 + 10; i++)
+        {
+            String string = randomItem(random) + i % 5;
+            model.add(string, -1, list.size());
+            list.add(string);
+            if (i % 97 == 0)
+                check(random, model, list);
+        }
+        check(random, model, list);
+
+        ComboPrefixIndex index = model.getPrefixIndex(true);
+        index.merge(model.items);
+        assertEquals(0, index.pendingSize);
+        for (int i = 1; i < index.size; i++)
+        {
+            int result = index.compare(model.items[index.order[i - 1]], model.items[index.order[i]]);
+            assertTrue(result < 0 || (result == 0 && index.order[i - 1] < index.order[i]));
+        }
+    }
+
+}
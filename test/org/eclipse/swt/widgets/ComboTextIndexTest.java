@@ -0,0 +1,167 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the exact-match lookups of <code>ComboModel</code>, answered by
+ * <code>ComboTextIndex</code>, against a scan of a plain list while items
+ * are appended, inserted, replaced and removed in the middle of the list.
+ */
+public class ComboTextIndexTest
+{
+
+    static String randomItem(Random random)
+    {
+        return random.nextInt(20) == 0 ? "" : "item" + random.nextInt(30);
+    }
+
+    static int indexOf(ArrayList list, String string, int start)
+    {
+        for (int i = Math.max(start, 0); i < list.size(); i++)
+        {
+            if (list.get(i).equals(string))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Makes one random change to the model and the list.
+     */
+    static void change(Random random, ComboModel model, ArrayList list)
+    {
+        int kind = random.nextInt(10);
+        if (kind < 4 || list.isEmpty())
+        {
+            String string = randomItem(random);
+            int index = kind < 2 ? list.size() : random.nextInt(list.size() + 1);
+            model.add(string, -1, index);
+            list.add(index, string);
+        }
+        else if (kind < 7)
+        {
+            int index = random.nextInt(list.size());
+            model.remove(index);
+            list.remove(index);
+        }
+        else if (kind < 8)
+        {
+            int start = random.nextInt(list.size());
+            int end = start + random.nextInt(Math.min(list.size() - start, 5));
+            model.remove(start, end);
+            for (int i = end; i >= start; i--)
+            {
+                list.remove(i);
+            }
+        }
+        else
+        {
+            int index = random.nextInt(list.size());
+            String string = randomItem(random);
+            model.setItem(index, string, -1);
+            list.set(index, string);
+        }
+    }
+
+    static void check(Random random, ComboModel model, ArrayList list)
+    {
+        for (int k = 0; k < 5; k++)
+        {
+            String string = randomItem(random);
+            int start = random.nextInt(list.size() + 2) - 1;
+            assertEquals(string, indexOf(list, string, start), model.indexOf(string, start));
+        }
+        for (int i = 0; i < list.size(); i++)
+        {
+            assertEquals(i, model.indexOf((String) list.get(i), i));
+        }
+    }
+
+    @Test
+    public void testLookupAfterEveryChange()
+    {
+        Random random = new Random(14);
+        ComboModel model = new ComboModel();
+        ArrayList list = new ArrayList();
+
+        for (int step = 0; step < 3000; step++)
+        {
+            change(random, model, list);
+            check(random, model, list);
+        }
+    }
+
+    @Test
+    public void testLookupAfterInterleavedChanges()
+    {
+        Random random = new Random(15);
+        ComboModel model = new ComboModel();
+        ArrayList list = new ArrayList();
+
+        for (int round = 0; round < 500; round++)
+        {
+            int changes = random.nextInt(20);
+            for (int i = 0; i < changes; i++)
+            {
+                change(random, model, list);
+            }
+            check(random, model, list);
+        }
+
+        model.setItems(new String[] { "a", "b", "a" }, null);
+        assertEquals(2, model.indexOf("a", 1));
+        model.removeAll();
+        assertEquals(-1, model.indexOf("a", 0));
+    }
+
+    @Test
+    public void testDuplicates()
+    {
+        ComboModel model = new ComboModel();
+        for (int i = 0; i < 100; i++)
+        {
+            model.add(i % 3 == 0 ? "x" : "y" + i, -1, model.getCount());
+        }
+
+        for (int start = 0; start < 100; start++)
+        {
+            assertEquals((start + 2) / 3 * 3, model.indexOf("x", start));
+        }
+
+        model.remove(0);
+        assertEquals(2, model.indexOf("x", 0));
+        model.add("x", -1, 0);
+        assertEquals(0, model.indexOf("x", 0));
+        assertEquals(3, model.indexOf("x", 1));
+    }
+
+    @Test
+    public void testVirtualTruncation()
+    {
+        ComboVirtualModel model = new ComboVirtualModel(new ComboVirtualModel.Provider()
+        {
+            public void resolve(ComboVirtualModel virtualModel, int index)
+            {
+                virtualModel.setItem(index, "item" + index % 10, -1);
+            }
+        });
+        model.setItemCount(100);
+        for (int i = 0; i < 100; i++)
+        {
+            model.getItem(i);
+        }
+
+        model.add("first", -1, 0);
+        model.setItemCount(50);
+
+        assertEquals(0, model.indexOf("first", 0));
+        assertEquals(10, model.indexOf("item9", 0));
+        assertEquals(-1, model.indexOf("item9", 50));
+    }
+
+}
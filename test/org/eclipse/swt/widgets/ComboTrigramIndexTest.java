@@ -0,0 +1,205 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks <code>ComboTrigramIndex</code> and
+ * <code>ComboModel.indexOfContaining()</code> against a scan of the items,
+ * and that a build or a search that is cancelled can be resumed or repeated.
+ */
+public class ComboTrigramIndexTest
+{
+
+    static String randomItem(Random random, int maxLength)
+    {
+        int length = random.nextInt(maxLength + 1);
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < length; i++)
+        {
+            char c = (char) ('a' + random.nextInt(4));
+            buffer.append(random.nextInt(3) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return buffer.toString();
+    }
+
+    static int[] find(String[] items, int count, String query, int start, boolean ignoreCase, int limit)
+    {
+        int[] result = new int[count];
+        int size = 0;
+        for (int i = start; i < count && size < limit; i++)
+        {
+            if (items[i] == null)
+                continue;
+            for (int j = 0; j + query.length() <= items[i].length(); j++)
+            {
+                if (items[i].regionMatches(ignoreCase, j, query, 0, query.length()))
+                {
+                    result[size++] = i;
+                    break;
+                }
+            }
+        }
+        int[] trimmed = new int[size];
+        System.arraycopy(result, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    static String[] randomItems(Random random, int count)
+    {
+        String[] items = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            items[i] = random.nextInt(50) == 0 ? null : randomItem(random, 10);
+        }
+        return items;
+    }
+
+    @Test
+    public void testFind()
+    {
+        Random random = new Random(4);
+
+        for (int round = 0; round < 20; round++)
+        {
+            String[] items = randomItems(random, 2000);
+            ComboTrigramIndex index = new ComboTrigramIndex();
+            index.build(items, items.length);
+
+            for (int k = 0; k < 200; k++)
+            {
+                String query = randomItem(random, 6);
+                int start = random.nextInt(items.length);
+                boolean ignoreCase = random.nextBoolean();
+                int limit = random.nextBoolean() ? Integer.MAX_VALUE : 1 + random.nextInt(5);
+
+                int[] expected = find(items, items.length, query, start, ignoreCase, limit);
+                assertArrayEquals(query, expected, index.find(items, items.length, query, start, ignoreCase, limit));
+                assertEquals(query, expected.length > 0 ? expected[0] : -1,
+                    index.indexOf(items, items.length, query, start, ignoreCase));
+            }
+        }
+    }
+
+    @Test
+    public void testAppend()
+    {
+        Random random = new Random(5);
+        String[] items = randomItems(random, 3000);
+        ComboTrigramIndex index = new ComboTrigramIndex();
+
+        for (int count = 0; count < items.length; count++)
+        {
+            if (items[count] != null)
+                index.add(items[count], count);
+            if (count % 100 == 0)
+            {
+                String query = randomItem(random, 4);
+                assertArrayEquals(find(items, count + 1, query, 0, true, Integer.MAX_VALUE),
+                    index.find(items, count + 1, query, 0, true, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    @Test
+    public void testModelChanges()
+    {
+        Random random = new Random(13);
+        ComboModel model = new ComboModel();
+        ArrayList list = new ArrayList();
+
+        for (int step = 0; step < 3000; step++)
+        {
+            int kind = random.nextInt(8);
+            if (kind < 4 || list.isEmpty())
+            {
+                String string = randomItem(random, 6);
+                int index = kind < 3 ? list.size() : random.nextInt(list.size() + 1);
+                model.add(string, -1, index);
+                list.add(index, string);
+            }
+            else if (kind < 6)
+            {
+                int index = random.nextInt(list.size());
+                model.remove(index);
+                list.remove(index);
+            }
+            else
+            {
+                int index = random.nextInt(list.size());
+                String string = randomItem(random, 6);
+                model.setItem(index, string, -1);
+                list.set(index, string);
+            }
+
+            String[] items = (String[]) list.toArray(new String[list.size()]);
+            String query = randomItem(random, 4);
+            int start = random.nextInt(items.length + 1);
+            boolean ignoreCase = random.nextBoolean();
+            int[] expected = find(items, items.length, query, start, ignoreCase, 1);
+            assertEquals(query, expected.length > 0 ? expected[0] : -1, model.indexOfContaining(query, start, ignoreCase));
+        }
+    }
+
+    @Test
+    public void testCancelledBuildResumes()
+    {
+        Random random = new Random(6);
+        String[] items = randomItems(random, 10000);
+        final int[] checks = new int[1];
+        ComboTrigramIndex.CancelCheck check = new ComboTrigramIndex.CancelCheck()
+        {
+            public boolean isCancelled()
+            {
+                return ++checks[0] % 2 == 0;
+            }
+        };
+
+        ComboTrigramIndex index = new ComboTrigramIndex();
+        int indexed = 0, builds = 0;
+        while (indexed < items.length)
+        {
+            indexed = index.build(items, indexed, items.length, check);
+            builds++;
+        }
+
+        assertTrue(builds > 1);
+        for (int k = 0; k < 100; k++)
+        {
+            String query = randomItem(random, 5);
+            assertArrayEquals(find(items, items.length, query, 0, true, Integer.MAX_VALUE),
+                index.find(items, items.length, query, 0, true, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void testCancelledFind()
+    {
+        String[] items = new String[10000];
+        for (int i = 0; i < items.length; i++)
+        {
+            items[i] = "item" + i;
+        }
+        ComboTrigramIndex index = new ComboTrigramIndex();
+        index.build(items, items.length);
+        ComboTrigramIndex.CancelCheck cancelled = new ComboTrigramIndex.CancelCheck()
+        {
+            public boolean isCancelled()
+            {
+                return true;
+            }
+        };
+
+        assertNull(index.find(items, items.length, "item", 0, true, Integer.MAX_VALUE, cancelled));
+        assertNull(index.find(items, items.length, "it", 0, true, Integer.MAX_VALUE, cancelled));
+        assertEquals(items.length, index.find(items, items.length, "item", 0, true, Integer.MAX_VALUE, null).length);
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.eclipse.swt.widgets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the ranking of <code>ComboUsageStats</code> and its bounded heap
+ * against sorting all candidates.
+ */
+public class ComboUsageStatsTest
+{
+
+    /**
+     * Returns the best <code>k</code> candidates by selection sort.
+     */
+    static int[] top(ComboUsageStats stats, String[] items, int[] candidates, int start, int end, int k)
+    {
+        int[] sorted = new int[end - start];
+        System.arraycopy(candidates, start, sorted, 0, sorted.length);
+
+        for (int i = 0; i < sorted.length; i++)
+        {
+            int best = i;
+            for (int j = i + 1; j < sorted.length; j++)
+            {
+                long score = stats.getScore(items[sorted[j]]), bestScore = stats.getScore(items[sorted[best]]);
+                if (score > bestScore || (score == bestScore && sorted[j] < sorted[best]))
+                    best = j;
+            }
+            int swap = sorted[i];
+            sorted[i] = sorted[best];
+            sorted[best] = swap;
+        }
+
+        int[] result = new int[Math.max(0, Math.min(k, sorted.length))];
+        System.arraycopy(sorted, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void testTop()
+    {
+        Random random = new Random(7);
+
+        for (int round = 0; round < 200; round++)
+        {
+            ComboUsageStats stats = new ComboUsageStats();
+            String[] items = new String[1 + random.nextInt(200)];
+            for (int i = 0; i < items.length; i++)
+            {
+                items[i] = "item" + random.nextInt(items.length);
+            }
+
+            int uses = random.nextInt(500);
+            for (int i = 0; i < uses; i++)
+            {
+                stats.record(items[random.nextInt(items.length)]);
+            }
+
+            int[] candidates = new int[items.length];
+            for (int i = 0; i < candidates.length; i++)
+            {
+                candidates[i] = random.nextInt(items.length);
+            }
+            int start = random.nextInt(candidates.length);
+            int end = start + random.nextInt(candidates.length - start + 1);
+            int k = random.nextInt(20);
+
+            assertArrayEquals(top(stats, items, candidates, start, end, k), stats.top(items, candidates, start, end, k));
+        }
+    }
+
+    @Test
+    public void testCounts()
+    {
+        ComboUsageStats stats = new ComboUsageStats();
+        for (int i = 0; i < 1000; i++)
+        {
+            stats.record("item" + (i % 100));
+        }
+        stats.record("item5");
+
+        assertEquals(11, stats.getCount("item5"));
+        assertEquals(10, stats.getCount("item6"));
+        assertEquals(0, stats.getCount("other"));
+        assertEquals(0L, stats.getScore("other"));
+
+        String[] items = { "item6", "item5", "other" };
+        int[] candidates = { 0, 1, 2 };
+        assertArrayEquals(new int[] { 1, 0, 2 }, stats.top(items, candidates, 0, 3, 3));
+
+        stats.clear();
+        assertEquals(0, stats.getCount("item5"));
+    }
+
+}